@@ -2,6 +2,7 @@ package com.roughandcheap.tinyclosuretabledao.commons;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.stream.Stream;
 
 import jakarta.persistence.EntityManager;
 
@@ -28,6 +29,26 @@ public interface DbSession {
 	 * @return the result list of the query.
 	 */
 	List<?> queryList(String queryText, Object [] parameters);
+
+	/**
+	 * Executes a query and returns the given range of its result list.
+	 * @param queryText the JPQL text for the query.
+	 * @param parameters the positional parameters for "?" place-holders in query text.
+	 * @param firstResult the position of the first result to retrieve.
+	 * @param maxResults the maximum number of results to retrieve.
+	 * @return the result list of the query.
+	 */
+	List<?> queryList(String queryText, Object [] parameters, int firstResult, int maxResults);
+
+	/**
+	 * Executes a query and returns its result list, caching the result in the given query cache region.
+	 * Without an enabled query cache the query is executed as usual.
+	 * @param queryText the JPQL text for the query.
+	 * @param parameters the positional parameters for "?" place-holders in query text.
+	 * @param cacheRegion the name of the query cache region.
+	 * @return the result list of the query.
+	 */
+	List<?> queryList(String queryText, Object [] parameters, String cacheRegion);
 	
 	/**
 	 * Executes given query and returns the resulting count of found records.
@@ -38,6 +59,33 @@ public interface DbSession {
 	 */
 	int queryCount(String queryText, Object [] parameters);
 
+	/**
+	 * Executes a query and returns its single result without materializing a result list.
+	 * @param queryText the JPQL text for the query.
+	 * @param parameters the positional parameters for "?" place-holders in query text.
+	 * @return the single result of the query, or null when no record was found.
+	 */
+	Object querySingleResult(String queryText, Object [] parameters);
+
+	/**
+	 * Executes given query limited to one record and returns whether a record was found.
+	 * The query should select a constant, e.g. <code>select 1 from ...</code>, so no entity is loaded.
+	 * @param queryText the JPQL text for the query.
+	 * @param parameters the positional parameters for "?" place-holders in query text.
+	 * @return true when at least one record was found.
+	 */
+	boolean queryExists(String queryText, Object [] parameters);
+
+	/**
+	 * Executes a read-only query and returns its results as a lazily scrolled stream.
+	 * The returned stream holds an open cursor and MUST be closed by the caller.
+	 * @param queryText the JPQL text for the query.
+	 * @param parameters the positional parameters for "?" place-holders in query text.
+	 * @param fetchSize the JDBC fetch size.
+	 * @return the stream of query results.
+	 */
+	Stream<?> queryStream(String queryText, Object [] parameters, int fetchSize);
+
 	/**
 	 * Save the passed object to persistence.
 	 * @param node the object to save.
@@ -83,6 +131,18 @@ public interface DbSession {
 	 */
 	void flush();
 
+	/**
+	 * Detaches all managed objects from the persistence context.
+	 * This is needed after bulk JPQL statements, as managed objects are not updated by them.
+	 */
+	void clear();
+
+	/**
+	 * Detaches passed object from the persistence context.
+	 * @param node the object to detach.
+	 */
+	void detach(Object node);
+
 	/**
 	 * 
 	 * @param object
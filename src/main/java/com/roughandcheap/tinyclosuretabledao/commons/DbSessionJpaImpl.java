@@ -2,8 +2,12 @@ package com.roughandcheap.tinyclosuretabledao.commons;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.transaction.Transactional;
 
@@ -51,6 +55,18 @@ public class DbSessionJpaImpl implements DbSession {
         entityManager.flush();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        entityManager.clear();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void detach(Object node) {
+        entityManager.detach(node);
+    }
+
     /** {@inheritDoc} */
     @Transactional
     @Override
@@ -72,12 +88,53 @@ public class DbSessionJpaImpl implements DbSession {
         return query.getResultList();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public List<?> queryList(String queryText, Object[] parameters, int firstResult, int maxResults) {
+        Query query = query(queryText, parameters);
+        query.setFirstResult(firstResult);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<?> queryList(String queryText, Object[] parameters, String cacheRegion) {
+        Query query = query(queryText, parameters);
+        query.setHint(HibernateHints.HINT_CACHEABLE, true);
+        query.setHint(HibernateHints.HINT_CACHE_REGION, cacheRegion);
+        return query.getResultList();
+    }
+
     /** {@inheritDoc} */
     @Override
     public int queryCount(String queryText, Object[] parameters) {
-        @SuppressWarnings("rawtypes")
-        List result = queryList(queryText, parameters);
-        return ((Number) result.get(0)).intValue();
+        return ((Number) querySingleResult(queryText, parameters)).intValue();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object querySingleResult(String queryText, Object[] parameters) {
+        try {
+            return query(queryText, parameters).getSingleResult();
+        } catch (NoResultException e) {
+            return null;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean queryExists(String queryText, Object[] parameters) {
+        return !query(queryText, parameters).setMaxResults(1).getResultList().isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Stream<?> queryStream(String queryText, Object[] parameters, int fetchSize) {
+        Query query = query(queryText, parameters);
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getResultStream();
     }
 
     /** {@inheritDoc} */
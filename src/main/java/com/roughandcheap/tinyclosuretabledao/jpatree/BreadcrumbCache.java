@@ -0,0 +1,204 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * ノードの祖先 ID の並び（パンくずリスト）を保持する、件数に上限のあるキャッシュ
+ * <p>
+ * ノード ID ごとに、ルートからノードまでの ID を保持します。上限を超えた場合は、最も長く参照されていない
+ * エントリから破棄します。
+ * ノードの移動や削除の際は、移動、削除したノードを祖先に含むエントリのみを破棄します。
+ * 祖先 ID からエントリへの逆引きを保持するため、破棄の手間は破棄するエントリの件数に比例します。
+ * <p>
+ * 破棄のたびに世代を進めます。祖先 ID を読み取る前に {@link #getEpoch()} で世代を取得し、
+ * {@link #put(Serializable, List, long)} に渡すことで、読み取り中に破棄された古い祖先 ID の登録を防ぎます。
+ * <p>
+ * ヒット、ミス、破棄の件数を統計として参照できます。
+ *
+ * @author Zatsurendo
+ */
+public class BreadcrumbCache {
+
+    /** 最大件数 */
+    private final int maximumSize;
+    /** ノード ID と祖先 ID（アクセス順） */
+    private final LinkedHashMap<Serializable, List<Serializable>> chains;
+    /** 祖先 ID（自身を含む）と、その ID を祖先に含むエントリのノード ID */
+    private final Map<Serializable, Set<Serializable>> dependents = new HashMap<>();
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    /** 破棄の世代 */
+    private long epoch;
+
+    /**
+     * コンストラクタ
+     *
+     * @param maximumSize 最大件数
+     * @throws IllegalArgumentException {@code maximumSize} が 1 未満の場合
+     */
+    public BreadcrumbCache(int maximumSize) {
+
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive.");
+        }
+        this.maximumSize = maximumSize;
+        this.chains = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Serializable, List<Serializable>> eldest) {
+                if (size() > BreadcrumbCache.this.maximumSize) {
+                    evictionCount++;
+                    unlink(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * ノードの祖先 ID を返します
+     *
+     * @param id ノード ID
+     * @return ルートから順の祖先 ID（ノードを含む。キャッシュに存在しない場合は null）
+     */
+    @Nullable
+    public synchronized List<Serializable> get(Serializable id) {
+
+        List<Serializable> chain = chains.get(id);
+        if (chain == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return chain;
+    }
+
+    /**
+     * 現在の世代を返します
+     * <p>
+     * {@link #invalidateSubtree(Serializable)}、{@link #clear()} のたびに進みます。
+     *
+     * @return 世代
+     */
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * ノードの祖先 ID を登録します
+     * <p>
+     * {@code epoch} の取得後に破棄が行われていた場合は、読み取った祖先 ID が古い可能性があるため登録しません。
+     *
+     * @param id    ノード ID
+     * @param chain ルートから順の祖先 ID（ノードを含む）
+     * @param epoch 祖先 ID を読み取る前に {@link #getEpoch()} で取得した世代
+     * @return 登録した場合は true
+     */
+    public synchronized boolean put(Serializable id, List<Serializable> chain, long epoch) {
+
+        if (epoch != this.epoch) {
+            return false;
+        }
+        List<Serializable> copy = List.copyOf(chain);
+        List<Serializable> previous = chains.put(id, copy);
+        if (previous != null) {
+            unlink(id, previous);
+        }
+        for (Serializable ancestorId : copy) {
+            dependents.computeIfAbsent(ancestorId, k -> new HashSet<>()).add(id);
+        }
+        return true;
+    }
+
+    /**
+     * {@code rootId} のノードを祖先（自身を含む）に持つエントリを破棄します
+     * <p>
+     * ノードの移動や削除で祖先が変わるのは、そのノードのツリーに属するノードのみです。
+     *
+     * @param rootId 移動、削除したツリーの親ノードの ID
+     */
+    public synchronized void invalidateSubtree(Serializable rootId) {
+
+        epoch++;
+        Set<Serializable> ids = dependents.remove(rootId);
+        if (ids == null) {
+            return;
+        }
+        for (Serializable id : ids) {
+            List<Serializable> chain = chains.remove(id);
+            if (chain != null) {
+                unlink(id, chain);
+            }
+        }
+    }
+
+    /**
+     * 全てのエントリを破棄します
+     */
+    public synchronized void clear() {
+
+        epoch++;
+        chains.clear();
+        dependents.clear();
+    }
+
+    /**
+     * エントリの祖先 ID の逆引きを削除します
+     *
+     * @param id    ノード ID
+     * @param chain エントリの祖先 ID
+     */
+    private void unlink(Serializable id, List<Serializable> chain) {
+
+        for (Serializable ancestorId : chain) {
+            Set<Serializable> ids = dependents.get(ancestorId);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                dependents.remove(ancestorId);
+            }
+        }
+    }
+
+    /** @return 最大件数 */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /** @return 現在の件数 */
+    public synchronized int size() {
+        return chains.size();
+    }
+
+    /** @return キャッシュから返した回数 */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /** @return キャッシュに存在しなかった回数 */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** @return 上限を超えて破棄した件数 */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * ヒット率を返します
+     *
+     * @return ヒット率（参照がない場合は 0）
+     */
+    public synchronized double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0.0 : (double) hitCount / requests;
+    }
+}
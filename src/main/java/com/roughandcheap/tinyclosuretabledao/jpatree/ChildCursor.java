@@ -0,0 +1,13 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree;
+
+/**
+ * 子ノードのページングの位置
+ * <p>
+ * 子ノードは {@code (orderIndex, id)} の順に並べ替えられ、次のページはこの位置より後の子ノードから始まります。
+ * 
+ * @param orderIndex 前のページの最後の子ノードの並び順
+ * @param id         前のページの最後の子ノードの ID
+ * @author Zatsurendo
+ */
+public record ChildCursor(int orderIndex, long id) {
+}
@@ -0,0 +1,22 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree;
+
+/**
+ * 子ノードと、その子ノードの直下の子ノード数、子孫ノード数
+ * 
+ * @param <N>             ノードエンティティ
+ * @param node            子ノード
+ * @param childCount      直下の子ノード数
+ * @param descendantCount 子孫ノード数（子ノード自身を含まない）
+ * @author Zatsurendo
+ */
+public record ChildWithCounts<N extends TreeNode>(N node, long childCount, long descendantCount) {
+
+    /**
+     * 子ノードが子ノードを持つかどうかを返します
+     * 
+     * @return true:直下の子ノードが存在する
+     */
+    public boolean hasChildren() {
+        return childCount > 0;
+    }
+}
@@ -0,0 +1,25 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree;
+
+import java.util.List;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * 子ノードの 1 ページ
+ * 
+ * @param <N>   ノードエンティティ
+ * @param nodes ページの子ノード
+ * @param next  次のページの位置（最後のページの場合は null）
+ * @author Zatsurendo
+ */
+public record ChildrenPage<N extends TreeNode>(List<N> nodes, @Nullable ChildCursor next) {
+
+    /**
+     * 次のページが存在するかどうかを返します
+     * 
+     * @return true:次のページが存在する
+     */
+    public boolean hasNext() {
+        return next != null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * ノード名のトライグラム（3 文字の部分文字列）索引
+ * <p>
+ * 部分一致検索の候補となるノード ID をメモリ上で絞り込みます。候補は検索文字列の全てのトライグラムを含む
+ * ノードであり、実際に一致するかどうかは呼び出し側で確認する必要があります。
+ * 大文字と小文字は区別しません。
+ * 
+ * @author Zatsurendo
+ */
+public class NodeNameTrigramIndex {
+
+    /** 部分文字列の長さ */
+    private static final int GRAM_LENGTH = 3;
+    /** トライグラムとノード ID の集合 */
+    private final Map<String, Set<Serializable>> postings = new HashMap<>();
+    /** ノード ID とノード名 */
+    private final Map<Serializable, String> names = new HashMap<>();
+
+    /**
+     * {@code nodes} のノード名から索引を作成します
+     * 
+     * @param nodes ノードのコレクション
+     * @return 索引
+     */
+    public static NodeNameTrigramIndex of(Collection<? extends TreeNode> nodes) {
+
+        NodeNameTrigramIndex index = new NodeNameTrigramIndex();
+        nodes.forEach(index::put);
+        return index;
+    }
+
+    /**
+     * {@code node} のノード名を索引に登録します
+     * <p>
+     * 登録済みのノードの場合は、以前のノード名を置き換えます。
+     * 
+     * @param node 永続化済みのノード
+     */
+    public synchronized void put(TreeNode node) {
+
+        remove(node.getId());
+        if (node.getNodeName() == null) {
+            return;
+        }
+        String name = normalize(node.getNodeName());
+        names.put(node.getId(), name);
+        for (String gram : trigrams(name)) {
+            postings.computeIfAbsent(gram, k -> new HashSet<>()).add(node.getId());
+        }
+    }
+
+    /**
+     * ノードを索引から削除します
+     * 
+     * @param id ノードの ID
+     */
+    public synchronized void remove(Serializable id) {
+
+        String name = names.remove(id);
+        if (name == null) {
+            return;
+        }
+        for (String gram : trigrams(name)) {
+            Set<Serializable> ids = postings.get(gram);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * {@code fragment} を含む可能性のあるノードの ID を返します
+     * 
+     * @param fragment 検索文字列
+     * @return ノード ID の集合（{@code fragment} が 3 文字未満で絞り込めない場合は null）
+     */
+    @Nullable
+    public synchronized Set<Serializable> candidates(String fragment) {
+
+        Set<String> grams = trigrams(normalize(fragment));
+        if (grams.isEmpty()) {
+            return null;
+        }
+        List<Set<Serializable>> lists = new ArrayList<>();
+        for (String gram : grams) {
+            Set<Serializable> ids = postings.get(gram);
+            if (ids == null) {
+                return new HashSet<>();
+            }
+            lists.add(ids);
+        }
+        // 件数の少ない集合から積集合を取る
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Serializable> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 索引に登録されているノード数を返します
+     * 
+     * @return ノード数
+     */
+    public synchronized int size() {
+
+        return names.size();
+    }
+
+    private static String normalize(String name) {
+
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> trigrams(String name) {
+
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+            grams.add(name.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,14 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree;
+
+/**
+ * ノードの ID、ノード名、並び順のみを保持する読み取り専用の射影
+ * <p>
+ * エンティティを生成せずに取得するため、永続化コンテキストに登録されません。
+ * 
+ * @param id         ノードの ID
+ * @param nodeName   ノード名
+ * @param orderIndex 並び順
+ * @author Zatsurendo
+ */
+public record NodeSummary(long id, String nodeName, int orderIndex) {
+}
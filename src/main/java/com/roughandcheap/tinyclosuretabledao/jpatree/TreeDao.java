@@ -1,7 +1,9 @@
 package com.roughandcheap.tinyclosuretabledao.jpatree;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.roughandcheap.tinyclosuretabledao.jpatree.closuretable.TreePath;
 
@@ -169,6 +171,19 @@ public interface TreeDao<N extends TreeNode, P extends TreePath<N>> {
      */
     N addChild(N parent, N child, int orderIndex);
 
+    /**
+     * {@code parent} ノードの子要素として {@code children} を一括で追加する
+     * <p>
+     * 各子ノードの {@code orderIndex} は {@code startOrderIndex} から順に 1 ずつ加算した値になります。
+     * 親ノードの祖先パスの取得は 1 回のみで、ノードとパスはフラッシュ時にまとめて登録されます。
+     * 
+     * @param parent N extends TreeNode（null の場合はルートとして追加）
+     * @param children 追加するノードのコレクション
+     * @param startOrderIndex 先頭の子ノードの orderIndex
+     * @return 追加したノードのコレクション
+     */
+    List<N> addChildren(N parent, List<N> children, int startOrderIndex);
+
     /**
      * 指定されたノードの直下の子ノードの数を返します。
      * @param parent
@@ -183,6 +198,14 @@ public interface TreeDao<N extends TreeNode, P extends TreePath<N>> {
      */
     List<N> getChildren(N parent);
 
+    /**
+     * 指定された各ノードの直下の子ノードを、{@code orderIndex} の順で並べ替えて返します
+     * <p>子ノードが存在しないノードには空のコレクションを対応させます。
+     * @param parents 親ノードのコレクション
+     * @return 親ノードと子ノードのコレクションのマップ（{@code parents} の順）
+     */
+    Map<N, List<N>> getChildren(Collection<N> parents);
+
     /**
      * 指定されたノードと直下の子ノードを、{@code orderIndex} の順で並べ替えたコレクションを返します
      * @param parent
@@ -206,6 +229,17 @@ public interface TreeDao<N extends TreeNode, P extends TreePath<N>> {
      */
     List<N> getTree(N parent);
 
+    /**
+     * {@code parent} からの深さが {@code minDepth} 以上 {@code maxDepth} 以下の子ノードを返します
+     * <p>
+     * 深さの条件は SQL で評価されます。結果は深さ、{@code orderIndex} の順で並べ替えられます。
+     * @param parent 親ノード
+     * @param minDepth 最小の深さ（0 の場合は {@code parent} を含む）
+     * @param maxDepth 最大の深さ
+     * @return 子ノードのコレクション
+     */
+    List<N> getTree(N parent, int minDepth, int maxDepth);
+
     /**
      * 
      * @param node
@@ -213,6 +247,24 @@ public interface TreeDao<N extends TreeNode, P extends TreePath<N>> {
      */
     List<N> getPath(N node);
 
+    /**
+     * {@code node} から {@code maxLevelsUp} 階層上までの祖先ノードを、上位のノードから順に返します
+     * <p>
+     * 結果には {@code node} 自身を含みます。
+     * @param node 対象ノード
+     * @param maxLevelsUp 遡る最大の階層数
+     * @return 祖先ノードのコレクション
+     */
+    List<N> getPath(N node, int maxLevelsUp);
+
+    /**
+     * 指定された各ノードについて、ルートからノードまでのノードを上位のノードから順に返します
+     * <p>パスが存在しないノードには空のコレクションを対応させます。
+     * @param nodes 対象ノードのコレクション
+     * @return ノードと祖先ノードのコレクションのマップ（{@code nodes} の順）
+     */
+    Map<N, List<N>> getPaths(Collection<N> nodes);
+
     /**
      * {@code parent}を含む子ノードのツリーを返す
      * @param parent N extends TreeNode
@@ -235,6 +287,14 @@ public interface TreeDao<N extends TreeNode, P extends TreePath<N>> {
      */
     N getParent(N node);
 
+    /**
+     * 指定された各ノードの親のノードを返します
+     * <p>ルートノードとパスが存在しないノードには null を対応させます。
+     * @param nodes 対象ノードのコレクション
+     * @return ノードと親ノードのマップ（{@code nodes} の順）
+     */
+    Map<N, N> getParents(Collection<N> nodes);
+
     /**
      * 指定されたノードの兄弟ノードをコレクションで返します
      * @param node
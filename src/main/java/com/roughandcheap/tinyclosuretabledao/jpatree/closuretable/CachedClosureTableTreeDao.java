@@ -0,0 +1,621 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.roughandcheap.tinyclosuretabledao.commons.DbSession;
+import com.roughandcheap.tinyclosuretabledao.jpatree.JpaTreeException;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * ツリーの構造をメモリ上のスナップショット（{@link TreeSnapshot}）で保持する ClosureTableTreeDao
+ * <p>
+ * 祖先の判定、親子関係、ツリーの走査はスナップショットのみで判定し、エンティティが必要な場合は
+ * 1 回の IN 句のクエリで取得します。スナップショットは不変で、参照はロックを取得しません。
+ * <p>
+ * この DAO を通した更新を行ったトランザクションでは、コミットまでスナップショットを使用せずに DB から読み込みます。
+ * コミット後に、更新したノードのパスのみを新しい読み取り専用のトランザクションで読み直して反映した
+ * 新しいスナップショットに置き換え（コピーオンライト）、ロールバックした場合は置き換えません。
+ * 読み直しには {@link #setTransactionManager(PlatformTransactionManager)} で設定したトランザクションマネージャを使用し、
+ * 設定していない場合はスナップショットを破棄して、次の読み込みで作成し直します。
+ * {@link ClosureTableTreeLoader} などで DAO を通さずに更新した場合は {@link #refreshSnapshot()} を呼び出してください。
+ * <p>
+ * ノードの ID は数値である必要があります。
+ *
+ * @author Zatsurendo
+ */
+public class CachedClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreePath<N>> extends ClosureTableTreeDao<N, P> {
+
+    private static final Logger log = LoggerFactory.getLogger(CachedClosureTableTreeDao.class);
+
+    /** 公開中のスナップショット（未作成の場合は null） */
+    private final AtomicReference<TreeSnapshot> snapshot = new AtomicReference<>();
+    /** スナップショットの公開と世代の更新を排他するロック */
+    private final Object publishLock = new Object();
+    /** コミットの登録とスナップショットの公開ごとに加算する世代（更新は publishLock 内で行う） */
+    private volatile long generation;
+    /** コミットしたが、まだスナップショットに反映していない更新（publishLock で保護） */
+    private PendingWrites unapplied = new PendingWrites();
+    /** コミット後の読み直しに使用するトランザクションマネージャ（未設定の場合は null） */
+    @Nullable
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * コンストラクタ
+     *
+     * @param treeNodeEntityClass {@code ClosureTableTreeNode} のサブクラス
+     * @param treePathEntityClass {@code TreePath} のサブクラス
+     * @param dbSession           {@code DbSession} の実装クラス
+     */
+    public CachedClosureTableTreeDao(Class<N> treeNodeEntityClass, Class<P> treePathEntityClass, DbSession dbSession) {
+        super(treeNodeEntityClass, treePathEntityClass, dbSession);
+    }
+
+    /**
+     * コミット後にスナップショットへ反映するための読み直しに使用する、トランザクションマネージャを設定します
+     * <p>
+     * 読み直しはコミットしたトランザクションとは別の、読み取り専用のトランザクションで行います。
+     *
+     * @param transactionManager トランザクションマネージャ（null の場合は、コミットのたびにスナップショットを破棄する）
+     */
+    public void setTransactionManager(@Nullable PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * 閉包テーブルからスナップショットを作成し、公開中のスナップショットを置き換えます
+     * <p>
+     * 作成中に他のトランザクションの更新がコミットされた場合は、作成し直します。
+     *
+     * @return 作成したスナップショット
+     */
+    public TreeSnapshot refreshSnapshot() {
+
+        TreeSnapshot built;
+        long started;
+        do {
+            started = currentGeneration();
+            built = buildSnapshot();
+        } while (!publish(built, started, false));
+        log.debug("tree snapshot refreshed: {} node(s)", built.size());
+        return built;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreeSnapshot buildSnapshot() {
+
+        String orderString = "select p.descendant.id, p.orderIndex from " + pathEntityName() + " p where p.depth = 0";
+        String parentString = "select p.descendant.id, p.ancestor.id from " + pathEntityName() + " p where p.depth = 1";
+        List<Object[]> orders = (List<Object[]>) session.queryList(orderString, new Object[] {});
+        Map<Long, Long> parents = new HashMap<>();
+        ((List<Object[]>) session.queryList(parentString, new Object[] {}))
+                .forEach(row -> parents.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue()));
+        return toSnapshot(orders, parents, null, null);
+    }
+
+    /**
+     * {@code current} に、更新したノードの自己参照パスと親へのパスを読み直して反映したスナップショットを作成します
+     * <p>
+     * 読み込むのは更新したノード（ツリーを追加、削除した場合はそのツリーのノード）の分のみです。
+     *
+     * @param current 公開中のスナップショット
+     * @param writes  コミットした更新
+     * @return 新しいスナップショット
+     */
+    @SuppressWarnings("unchecked")
+    private TreeSnapshot deriveSnapshot(TreeSnapshot current, PendingWrites writes) {
+
+        Set<Long> changed = new HashSet<>(writes.nodeIds);
+        if (!writes.subtreeRoots.isEmpty()) {
+            for (Long root : writes.subtreeRoots) {
+                int i = current.indexOf(root);
+                if (i != TreeSnapshot.NONE) {
+                    Arrays.stream(current.subtreeIds(i)).forEach(changed::add);
+                }
+            }
+            String subtreeString = "select s.descendant.id from " + pathEntityName() + " s where s.ancestor.id in ?1";
+            for (List<Long> roots : chunk(new ArrayList<>(writes.subtreeRoots))) {
+                ((List<Object>) session.queryList(subtreeString, new Object[] { roots }))
+                        .forEach(id -> changed.add(((Number) id).longValue()));
+            }
+        }
+        String orderString = "select p.descendant.id, p.orderIndex from " + pathEntityName() + " p "
+                + "where p.depth = 0 and p.descendant.id in ?1";
+        String parentString = "select p.descendant.id, p.ancestor.id from " + pathEntityName() + " p "
+                + "where p.depth = 1 and p.descendant.id in ?1";
+        List<Object[]> orders = new ArrayList<>();
+        Map<Long, Long> parents = new HashMap<>();
+        for (List<Long> ids : chunk(new ArrayList<>(changed))) {
+            orders.addAll((List<Object[]>) session.queryList(orderString, new Object[] { ids }));
+            ((List<Object[]>) session.queryList(parentString, new Object[] { ids }))
+                    .forEach(row -> parents.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue()));
+        }
+        return toSnapshot(orders, parents, current, changed);
+    }
+
+    /**
+     * 自己参照パスと親へのパスの行からスナップショットを作成します
+     *
+     * @param orders  ノード ID と並び順の行
+     * @param parents ノード ID と親ノード ID
+     * @param base    元にするスナップショット（null の場合は行のみから作成）
+     * @param changed {@code base} から置き換えるノード ID
+     */
+    private TreeSnapshot toSnapshot(List<Object[]> orders, Map<Long, Long> parents,
+            @Nullable TreeSnapshot base, @Nullable Set<Long> changed) {
+
+        long[] ids = new long[orders.size()];
+        int[] orderIndexes = new int[orders.size()];
+        long[] parentIds = new long[orders.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ((Number) orders.get(i)[0]).longValue();
+            orderIndexes[i] = ((Number) orders.get(i)[1]).intValue();
+            parentIds[i] = parents.getOrDefault(ids[i], TreeSnapshot.NO_PARENT);
+        }
+        return base == null ? TreeSnapshot.of(ids, orderIndexes, parentIds)
+                : base.withChanges(changed, ids, orderIndexes, parentIds);
+    }
+
+    private long currentGeneration() {
+        return generation;
+    }
+
+    /**
+     * {@code started} の世代から更新がコミットされていない場合のみ、スナップショットを公開します
+     *
+     * @param built      公開するスナップショット
+     * @param started    作成を開始した時の世代
+     * @param ifAbsent   true:公開中のスナップショットがない場合のみ公開する
+     * @return true:公開した
+     */
+    private boolean publish(TreeSnapshot built, long started, boolean ifAbsent) {
+
+        synchronized (publishLock) {
+            if (generation != started || (ifAbsent && snapshot.get() != null)) {
+                return false;
+            }
+            snapshot.set(built);
+            generation++;
+            return true;
+        }
+    }
+
+    /**
+     * コミットした更新をスナップショットに反映します
+     * <p>
+     * 世代を加算して未反映の更新に加えることで、コミット前に作成を開始した古いスナップショットは公開されません。
+     * 未反映の更新をまとめて取り出し、ロックの外で更新したノードの分のみを読み直して反映します。
+     * 読み直しの間に他のコミットや公開があった場合は、取り出した更新を戻して、公開中のスナップショットからやり直します。
+     * そのため、同時にコミットした更新が失われることはありません。
+     *
+     * @param writes  コミットした更新
+     * @param reader  読み直しを行う処理（null の場合はスナップショットを破棄する）
+     */
+    private void applyWrites(PendingWrites writes, @Nullable Function<Supplier<TreeSnapshot>, TreeSnapshot> reader) {
+
+        synchronized (publishLock) {
+            generation++;
+            if (snapshot.get() == null || reader == null) {
+                // 次の読み込みで作成する
+                snapshot.set(null);
+                unapplied = new PendingWrites();
+                return;
+            }
+            unapplied.addAll(writes);
+        }
+        while (true) {
+            TreeSnapshot current;
+            PendingWrites batch;
+            long started;
+            synchronized (publishLock) {
+                current = snapshot.get();
+                if (current == null || unapplied.isEmpty()) {
+                    return;
+                }
+                batch = unapplied;
+                unapplied = new PendingWrites();
+                started = generation;
+            }
+            TreeSnapshot next;
+            try {
+                next = reader.apply(() -> deriveSnapshot(current, batch));
+            } catch (RuntimeException e) {
+                // 次の読み込みで作成する
+                log.warn("failed to update tree snapshot: {}", e.getMessage());
+                synchronized (publishLock) {
+                    generation++;
+                    snapshot.set(null);
+                    unapplied = new PendingWrites();
+                }
+                return;
+            }
+            synchronized (publishLock) {
+                if (generation == started) {
+                    snapshot.set(next);
+                    generation++;
+                    log.debug("tree snapshot updated: {} node(s)", next.size());
+                    return;
+                }
+                unapplied.addAll(batch);
+            }
+        }
+    }
+
+    /**
+     * コミット後の読み直しを、新しい読み取り専用のトランザクションで行う処理を返します
+     *
+     * @return 読み直しを行う処理（トランザクションマネージャが未設定の場合は null）
+     */
+    @Nullable
+    private Function<Supplier<TreeSnapshot>, TreeSnapshot> newTransactionReader() {
+
+        if (transactionManager == null) {
+            return null;
+        }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        return derive -> template.execute(status -> derive.get());
+    }
+
+    /**
+     * 読み込みに使用するスナップショットを返します
+     * <p>
+     * 現在のトランザクションでこの DAO を通した更新を行った場合は null を返します。
+     * スナップショットが未作成の場合は作成します。
+     *
+     * @return スナップショット（使用できない場合は null）
+     */
+    @Nullable
+    protected TreeSnapshot currentSnapshot() {
+
+        if (TransactionResources.isActive()
+                && TransactionResources.find(PendingWrites.class, this, transactionSession()) != null) {
+            return null;
+        }
+        TreeSnapshot current = snapshot.get();
+        if (current != null) {
+            return current;
+        }
+        // 作成中に更新がコミットされた場合や、他のスレッドが公開した場合は、そちらを優先する
+        long started = currentGeneration();
+        TreeSnapshot built = buildSnapshot();
+        if (publish(built, started, true)) {
+            return built;
+        }
+        TreeSnapshot published = snapshot.get();
+        return published != null ? published : built;
+    }
+
+    /**
+     * 更新後に呼び出し、トランザクションのコミット後に更新したノードをスナップショットに反映します
+     * <p>
+     * トランザクションの同期が有効でない場合は、すぐに反映します。
+     *
+     * @param nodeIds      更新したノードの ID
+     * @param subtreeRoots 追加、削除したツリーの親ノードの ID
+     */
+    protected void afterWrite(Collection<? extends Serializable> nodeIds, Collection<? extends Serializable> subtreeRoots) {
+
+        if (!TransactionResources.isActive()) {
+            PendingWrites writes = new PendingWrites();
+            writes.add(nodeIds, subtreeRoots);
+            applyWrites(writes, Supplier::get);
+            return;
+        }
+        TransactionResources.getOrBind(PendingWrites.class, this, transactionSession(), PendingWrites::new,
+                committed -> applyWrites(committed, newTransactionReader()))
+                .add(nodeIds, subtreeRoots);
+    }
+
+    private static Long longId(Serializable id) {
+
+        return ((Number) id).longValue();
+    }
+
+    /** トランザクションで更新したノード */
+    private static final class PendingWrites {
+        private final Set<Long> nodeIds = new HashSet<>();
+        private final Set<Long> subtreeRoots = new HashSet<>();
+
+        private void add(Collection<? extends Serializable> nodes, Collection<? extends Serializable> roots) {
+            nodes.forEach(id -> nodeIds.add(longId(id)));
+            roots.forEach(id -> subtreeRoots.add(longId(id)));
+        }
+
+        private void addAll(PendingWrites writes) {
+            nodeIds.addAll(writes.nodeIds);
+            subtreeRoots.addAll(writes.subtreeRoots);
+        }
+
+        private boolean isEmpty() {
+            return nodeIds.isEmpty() && subtreeRoots.isEmpty();
+        }
+    }
+
+    private int indexOf(TreeSnapshot current, N node) {
+
+        if (node == null || !isPersistent(node)) {
+            return TreeSnapshot.NONE;
+        }
+        return current.indexOf(((Number) node.getId()).longValue());
+    }
+
+    /**
+     * {@code ids} のノードを 1 回のクエリ（件数が多い場合は分割）で取得し、{@code ids} の順で返します
+     *
+     * @param ids ノード ID
+     * @return ノードのリスト
+     */
+    @SuppressWarnings("unchecked")
+    protected List<N> loadNodes(long[] ids) {
+
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            idList.add(id);
+        }
+        Map<Serializable, N> nodes = new HashMap<>();
+        String queryString = "select n from " + nodeEntityName() + " n where n.id in ?1";
+        for (List<Long> chunk : chunk(idList)) {
+            ((List<N>) session.queryList(queryString, new Object[] { chunk }))
+                    .forEach(node -> nodes.put(((Number) node.getId()).longValue(), node));
+        }
+        List<N> result = new ArrayList<>(ids.length);
+        for (Long id : idList) {
+            N node = nodes.get(id);
+            if (node != null) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    /* 参照 */
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isPathExists(N node) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.isPathExists(node);
+        }
+        return indexOf(current, node) != TreeSnapshot.NONE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isRoot(N entity) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.isRoot(entity);
+        }
+        int i = indexOf(current, entity);
+        return i != TreeSnapshot.NONE && current.parent(i) == TreeSnapshot.NONE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasChild(N parent) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.hasChild(parent);
+        }
+        int i = indexOf(current, parent);
+        return i != TreeSnapshot.NONE && current.firstChild(i) != TreeSnapshot.NONE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean parentContains(N parent, N descendant) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.parentContains(parent, descendant);
+        }
+        int a = indexOf(current, parent);
+        int d = indexOf(current, descendant);
+        return a != TreeSnapshot.NONE && d != TreeSnapshot.NONE && current.isAncestor(a, d);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLevel(N node) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getLevel(node);
+        }
+        int i = indexOf(current, node);
+        if (i == TreeSnapshot.NONE) {
+            throw new JpaTreeException("specified path not registered. " + node.toString());
+        }
+        return current.level(i) + 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getChildrenCount(N parent) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getChildrenCount(parent);
+        }
+        int i = indexOf(current, parent);
+        return i == TreeSnapshot.NONE ? 0 : current.childCount(i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public N getParent(N node) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getParent(node);
+        }
+        int i = indexOf(current, node);
+        if (i == TreeSnapshot.NONE) {
+            return super.getParent(node);
+        }
+        int p = current.parent(i);
+        return p == TreeSnapshot.NONE ? null : find(current.id(p));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<N> getChildren(N parent) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getChildren(parent);
+        }
+        int i = indexOf(current, parent);
+        return i == TreeSnapshot.NONE ? new ArrayList<>() : loadNodes(current.childIds(i));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 同じ深さのノードは、親ノードの順、並び順の順に並びます。
+     */
+    @Override
+    public List<N> getTree(N parent) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getTree(parent);
+        }
+        int i = indexOf(current, parent);
+        return i == TreeSnapshot.NONE ? new ArrayList<>() : loadNodes(current.levelOrderIds(i));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<N> getPath(N node) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getPath(node);
+        }
+        int i = indexOf(current, node);
+        return i == TreeSnapshot.NONE ? new ArrayList<>() : loadNodes(current.pathIds(i));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<N> getRootNodes() {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getRootNodes();
+        }
+        return loadNodes(current.rootIds());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long[] getTreeIds(N parent) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getTreeIds(parent);
+        }
+        int i = indexOf(current, parent);
+        return i == TreeSnapshot.NONE ? new long[0] : current.levelOrderIds(i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long[] getPathIds(N node) {
+
+        TreeSnapshot current = currentSnapshot();
+        if (current == null) {
+            return super.getPathIds(node);
+        }
+        int i = indexOf(current, node);
+        return i == TreeSnapshot.NONE ? new long[0] : current.pathIds(i);
+    }
+
+    /* 更新 */
+
+    /** {@inheritDoc} */
+    @Override
+    public N addChild(N parent, N child, int orderIndex) {
+
+        N added = super.addChild(parent, child, orderIndex);
+        afterWrite(List.of(added.getId()), List.of());
+        return added;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<N> addChildren(N parent, List<N> children, int startOrderIndex) {
+
+        List<N> added = super.addChildren(parent, children, startOrderIndex);
+        afterWrite(added.stream().map(N::getId).toList(), List.of());
+        return added;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void moveTo(N parent, N moveTo, int orderIndex) {
+
+        super.moveTo(parent, moveTo, orderIndex);
+        afterWrite(List.of(parent.getId()), List.of());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void procParent(Serializable sourceId, @Nullable Serializable parentId, int orderIndex) {
+
+        super.procParent(sourceId, parentId, orderIndex);
+        afterWrite(List.of(sourceId), List.of());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public N copySubtree(N source, @Nullable N newParent, UnaryOperator<N> nodeCopier) {
+
+        N copy = super.copySubtree(source, newParent, nodeCopier);
+        afterWrite(List.of(), List.of(copy.getId()));
+        return copy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deletePath(N descendant, boolean force) {
+
+        Serializable id = descendant.getId();
+        super.deletePath(descendant, force);
+        afterWrite(List.of(id), List.of());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void deleteSubtree(N root, boolean removeNodes) {
+
+        Serializable id = root.getId();
+        super.deleteSubtree(root, removeNodes);
+        afterWrite(List.of(), List.of(id));
+    }
+}
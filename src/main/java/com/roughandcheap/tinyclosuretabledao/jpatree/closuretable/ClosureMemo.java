@@ -0,0 +1,69 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * トランザクションごとに、ノードの祖先 ID を保持するメモ
+ * <p>
+ * メモはパスエンティティとトランザクションの Hibernate セッションごとに束縛し、トランザクションの終了時に破棄します。
+ * {@code REQUIRES_NEW} で開始した内側のトランザクションは別のメモを使用するため、
+ * 外側のトランザクションのコミット前の更新を参照しません。
+ *
+ * @author Zatsurendo
+ */
+final class ClosureMemo {
+
+    private final Class<?> treePathEntityClass;
+    private final Supplier<Object> transactionSession;
+
+    /**
+     * コンストラクタ
+     *
+     * @param treePathEntityClass {@code TreePath} のサブクラス
+     * @param transactionSession  現在のトランザクションの Hibernate セッションを返す処理
+     */
+    ClosureMemo(Class<?> treePathEntityClass, Supplier<Object> transactionSession) {
+        this.treePathEntityClass = treePathEntityClass;
+        this.transactionSession = transactionSession;
+    }
+
+    /**
+     * 現在のトランザクションのメモを返します
+     *
+     * @return ノード ID と祖先 ID のマップ（トランザクション同期が無効な場合は null）
+     */
+    @Nullable
+    Map<Serializable, List<Serializable>> current() {
+
+        if (!TransactionResources.isActive()) {
+            return null;
+        }
+        return TransactionResources.getOrBind(Entries.class, treePathEntityClass, transactionSession.get(),
+                Entries::new, null).ancestorIds;
+    }
+
+    /**
+     * 現在のトランザクションのメモを破棄します
+     */
+    void invalidate() {
+
+        if (!TransactionResources.isActive()) {
+            return;
+        }
+        Entries entries = TransactionResources.find(Entries.class, treePathEntityClass, transactionSession.get());
+        if (entries != null) {
+            entries.ancestorIds.clear();
+        }
+    }
+
+    /** トランザクションに束縛するメモ */
+    private static final class Entries {
+        private final Map<Serializable, List<Serializable>> ancestorIds = new HashMap<>();
+    }
+}
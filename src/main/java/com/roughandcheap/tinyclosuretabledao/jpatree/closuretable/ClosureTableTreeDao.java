@@ -2,9 +2,16 @@ package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
 
 import com.roughandcheap.tinyclosuretabledao.commons.DbSession;
 import com.roughandcheap.tinyclosuretabledao.jpatree.AbstractTreeDao;
+import com.roughandcheap.tinyclosuretabledao.jpatree.BreadcrumbCache;
+import com.roughandcheap.tinyclosuretabledao.jpatree.ChildCursor;
+import com.roughandcheap.tinyclosuretabledao.jpatree.ChildWithCounts;
+import com.roughandcheap.tinyclosuretabledao.jpatree.ChildrenPage;
 import com.roughandcheap.tinyclosuretabledao.jpatree.ClosureTableTreeNodeInfo;
 import com.roughandcheap.tinyclosuretabledao.jpatree.JpaTreeException;
 import com.roughandcheap.tinyclosuretabledao.jpatree.NestedTreeNode;
+import com.roughandcheap.tinyclosuretabledao.jpatree.NodeNameTrigramIndex;
+import com.roughandcheap.tinyclosuretabledao.jpatree.NodeSummary;
+import com.roughandcheap.tinyclosuretabledao.jpatree.TreeNode;
 
 import jakarta.annotation.Nullable;
 import jakarta.persistence.Query;
@@ -13,18 +20,32 @@ import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -33,12 +54,40 @@ import org.springframework.util.CollectionUtils;
 public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreePath<N>> extends AbstractTreeDao<N, P> {
 
     private static final Logger log = LoggerFactory.getLogger(ClosureTableTreeDao.class);
+    /** IN 句に一度にバインドするパラメータの最大数 */
+    protected static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+    /**
+     * ノード情報の {@code treePaths}（ルートからの 19 桁ゼロ埋めの ID をハイフンで連結した文字列）
+     * <p>
+     * long の最大値の桁数で埋めるため、ID の桁数に関わらず文字列の順がツリーの順になります。
+     */
+    private static final String TREE_PATHS_EXPRESSION = "listagg( substr( concat( '0000000000000000000', str( p_1.ancestor ) ), length( concat( '0000000000000000000', str( p_1.ancestor ) ) ) - 18 ), '-' ) within  group ( order by p_1.depth desc )";
+    /** ノード情報の {@code pathSeq}（ルートからの ID をカンマで連結した文字列） */
+    private static final String PATH_SEQ_EXPRESSION = "listagg( str(p_1.ancestor), ',' ) within  group ( order by p_1.depth desc )";
+    /** NestedTreeNode の組み立てを並列で行う行数 */
+    protected static final int PARALLEL_ASSEMBLY_THRESHOLD = 100000;
     /** {@code ClosureTableTreeNode} のサブクラス */
     protected final Class<N> treeNodeEntityClass;
     /** {@code TreePath} のサブクラス */
     protected final Class<P> treePathEntityClass;
     /** */
     private boolean removeReferencedNodes = false;
+    /** addChild 時にパスを INSERT ... SELECT で一括登録するかどうか */
+    private boolean bulkPathInsert = true;
+    /** ストリームで読み込む際の JDBC フェッチサイズ */
+    private int streamFetchSize = 1000;
+    /** ストリームで読み込む際に永続化コンテキストをクリアする件数 */
+    private int streamClearInterval = 1000;
+    /** ノード名のトライグラム索引 */
+    private TransactionalNameIndex nameIndex;
+    /** 名前パスとノード ID のキャッシュ */
+    private final NamePathCache namePathCache = new NamePathCache(1000);
+    /** トランザクションごとの祖先 ID のメモ */
+    private final ClosureMemo ancestorMemo;
+    /** 祖先 ID のキャッシュ */
+    private TransactionalBreadcrumbs breadcrumbs;
+    /** 二次キャッシュとクエリキャッシュを使用するかどうか */
+    private boolean secondLevelCacheEnabled = false;
 
     /**
      * コンストラクタ
@@ -54,6 +103,7 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         super(treeNodeEntityClass.getSimpleName(), treePathEntityClass.getSimpleName(), dbSession);
         this.treeNodeEntityClass = treeNodeEntityClass;
         this.treePathEntityClass = treePathEntityClass;
+        this.ancestorMemo = new ClosureMemo(treePathEntityClass, this::transactionSession);
     }
 
     public boolean isRemoveReferenceNodes() {
@@ -64,6 +114,264 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         this.removeReferencedNodes = removeReferencedNodes;
     }
 
+    public boolean isBulkPathInsert() {
+        return bulkPathInsert;
+    }
+
+    /**
+     * addChild 時のパス登録方法を設定します
+     * <p>
+     * {@code true} の場合、自己参照パスと祖先パスを 1 回の INSERT ... SELECT で登録します。
+     * {@code false} の場合、祖先パスを取得して 1 件ずつ保存します。
+     * 
+     * @param bulkPathInsert
+     */
+    public void setBulkPathInsert(boolean bulkPathInsert) {
+        this.bulkPathInsert = bulkPathInsert;
+    }
+
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    public void setStreamFetchSize(int streamFetchSize) {
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    public int getStreamClearInterval() {
+        return streamClearInterval;
+    }
+
+    /**
+     * ストリームで読み込む際に、読み込んだエンティティを永続化コンテキストから切り離す件数を設定します
+     * <p>
+     * 切り離すのはストリームが読み込んだ読み取り専用のエンティティのみで、
+     * 呼び出し前から永続化コンテキストにあるエンティティとその変更はそのまま残ります。
+     * 0 以下の場合は切り離しません。
+     * 
+     * @param streamClearInterval
+     */
+    public void setStreamClearInterval(int streamClearInterval) {
+        this.streamClearInterval = streamClearInterval;
+    }
+
+    public NodeNameTrigramIndex getNameIndex() {
+        return nameIndex == null ? null : nameIndex.index();
+    }
+
+    /**
+     * 部分一致検索に使用するノード名の索引を設定します
+     * <p>
+     * 設定した索引は、この DAO を通したノードの登録、更新、削除に合わせて更新されます。
+     * トランザクション内の変更は、コミット後に索引へ反映します（ロールバックした場合は反映しません）。
+     * コミット前の同じトランザクション内の検索では、登録、更新したノードも候補に含めます。
+     * <p>
+     * {@link ClosureTableTreeLoader} などで DAO を通さずにノードを登録した場合や、
+     * エンティティのノード名を直接変更した場合（変更の検出で更新された場合）は、
+     * {@link #rebuildNameIndex()} で索引を作成し直してください。
+     * 
+     * @param nameIndex ノード名の索引（null の場合は索引を使用しない）
+     */
+    public void setNameIndex(NodeNameTrigramIndex nameIndex) {
+        this.nameIndex = nameIndex == null ? null : new TransactionalNameIndex(nameIndex, this::transactionSession);
+    }
+
+    /**
+     * 全てのノードからノード名の索引を作成し、この DAO に設定します
+     * <p>
+     * DAO を通さずにノードを登録した場合や、ノード名を直接変更した場合に呼び出してください。
+     * 
+     * @return 作成した索引
+     */
+    public NodeNameTrigramIndex rebuildNameIndex() {
+        NodeNameTrigramIndex index = NodeNameTrigramIndex.of(findAllTreeNode());
+        setNameIndex(index);
+        return index;
+    }
+
+    public int getNamePathCacheSize() {
+        return namePathCache.getMaximumSize();
+    }
+
+    /**
+     * {@link #findByNamePath(List)} のキャッシュの最大件数を設定します
+     * <p>
+     * 0 以下の場合はキャッシュしません。
+     * 
+     * @param namePathCacheSize
+     */
+    public void setNamePathCacheSize(int namePathCacheSize) {
+        namePathCache.setMaximumSize(namePathCacheSize);
+    }
+
+    /**
+     * {@link #findByNamePath(List)} のキャッシュを削除します
+     * <p>
+     * ノードの移動、削除と、この DAO を通したノードの更新の際に自動で削除されます。
+     * DAO を通さずにノード名を変更した場合は、このメソッドを呼び出してください。
+     */
+    public void clearNamePathCache() {
+        namePathCache.clear();
+    }
+
+    public BreadcrumbCache getBreadcrumbCache() {
+        return breadcrumbs == null ? null : breadcrumbs.cache();
+    }
+
+    /**
+     * {@link #getPath(ClosureTableTreeNode)} で使用する祖先 ID のキャッシュを設定します
+     * <p>
+     * キャッシュのエントリは、この DAO を通したノードの移動、削除、パスの保存に合わせて、
+     * 対象のツリーに属するノードの分のみ破棄されます。
+     * DAO を通さずにパスを更新した場合は、{@link BreadcrumbCache#clear()} を呼び出してください。
+     * 
+     * @param breadcrumbCache 祖先 ID のキャッシュ（null の場合はキャッシュしない）
+     */
+    public void setBreadcrumbCache(BreadcrumbCache breadcrumbCache) {
+        this.breadcrumbs = breadcrumbCache == null ? null
+                : new TransactionalBreadcrumbs(breadcrumbCache, this::transactionSession);
+    }
+
+    /**
+     * {@code root} のツリーに属するノードのエントリを祖先 ID のキャッシュから破棄します
+     * 
+     * @param root ツリーの親ノード
+     * @see TransactionalBreadcrumbs#invalidateSubtree(Serializable)
+     */
+    private void invalidateBreadcrumbs(N root) {
+
+        TransactionalBreadcrumbs current = breadcrumbs;
+        if (current != null && root != null && root.getId() != null) {
+            current.invalidateSubtree(root.getId());
+        }
+    }
+
+    /**
+     * 現在のトランザクションでツリーを更新したことを記録します
+     * <p>
+     * 更新したトランザクションでは、コミット前のパスを祖先 ID のキャッシュに登録しません。
+     */
+    void markTreeWritten() {
+
+        TransactionalBreadcrumbs current = breadcrumbs;
+        if (current != null) {
+            current.markWritten();
+        }
+    }
+
+    public boolean isSecondLevelCacheEnabled() {
+        return secondLevelCacheEnabled;
+    }
+
+    /**
+     * ツリーの参照に Hibernate の二次キャッシュとクエリキャッシュを使用するかどうかを設定します
+     * <p>
+     * {@code true} の場合、{@link #getChildren(ClosureTableTreeNode)}、{@link #getRootNodes()}、
+     * {@link #getPath(ClosureTableTreeNode)} のクエリの結果を {@link #getQueryCacheRegion()} のリージョンに保持します。
+     * Hibernate を通した更新は、コミット時に Hibernate がテーブルごとに無効化するため、破棄の必要はありません。
+     * <p>
+     * {@code hibernate.cache.use_second_level_cache}、{@code hibernate.cache.use_query_cache}、
+     * {@code hibernate.cache.region.factory_class} の設定と、ノードとパスのエンティティへの
+     * {@code @Cacheable} の付与が必要です。設定されていない場合はキャッシュせずにクエリを実行します。
+     * 
+     * @param secondLevelCacheEnabled
+     */
+    public void setSecondLevelCacheEnabled(boolean secondLevelCacheEnabled) {
+        this.secondLevelCacheEnabled = secondLevelCacheEnabled;
+    }
+
+    /**
+     * ツリーの参照クエリの結果を保持するクエリキャッシュのリージョン名を返します
+     * 
+     * @return リージョン名
+     */
+    public String getQueryCacheRegion() {
+        return treePathEntityClass.getName() + ".tree";
+    }
+
+    /**
+     * ツリーのクエリキャッシュのリージョンと、パスエンティティの二次キャッシュを破棄します
+     * <p>
+     * Hibernate を通した更新では不要です。JDBC やストアドプロシージャなど、Hibernate を通さずにパスを更新した場合に、
+     * コミット後に呼び出してください。
+     */
+    public void evictTreeCaches() {
+
+        if (!secondLevelCacheEnabled) {
+            return;
+        }
+        Cache cache = sessionFactory().getCache();
+        cache.evictQueryRegion(getQueryCacheRegion());
+        cache.evictEntityData(treePathEntityClass);
+    }
+
+    /**
+     * ノードとパスのエンティティ、ツリーのクエリのリージョンごとのキャッシュの統計を返します
+     * <p>
+     * {@code hibernate.generate_statistics} が有効で、リージョンが作成済みの場合のみ含まれます。
+     * 
+     * @return リージョン名と統計のマップ
+     */
+    public Map<String, CacheRegionStatistics> getCacheRegionStatistics() {
+
+        Map<String, CacheRegionStatistics> result = new LinkedHashMap<>();
+        Statistics statistics = sessionFactory().getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            return result;
+        }
+        Set<String> regionNames = new HashSet<>(Arrays.asList(statistics.getSecondLevelCacheRegionNames()));
+        for (String region : List.of(treeNodeEntityClass.getName(), treePathEntityClass.getName())) {
+            if (regionNames.contains(region)) {
+                result.put(region, statistics.getDomainDataRegionStatistics(region));
+            }
+        }
+        CacheRegionStatistics queryRegion = statistics.getQueryRegionStatistics(getQueryCacheRegion());
+        if (queryRegion != null) {
+            result.put(getQueryCacheRegion(), queryRegion);
+        }
+        return result;
+    }
+
+    private SessionFactory sessionFactory() {
+
+        return session.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class);
+    }
+
+    /**
+     * ツリーの参照クエリを実行します
+     * <p>
+     * 二次キャッシュを使用する場合は、結果をクエリキャッシュに保持します。
+     */
+    private List<?> treeQueryList(String queryText, Object[] parameters) {
+
+        return secondLevelCacheEnabled
+                ? session.queryList(queryText, parameters, getQueryCacheRegion())
+                : session.queryList(queryText, parameters);
+    }
+
+    private void indexName(N node) {
+        if (nameIndex != null && node != null && isPersistent(node)) {
+            nameIndex.put(node);
+        }
+    }
+
+    private void unindexName(Serializable id) {
+        if (nameIndex != null) {
+            nameIndex.remove(id);
+        }
+    }
+
+    /**
+     * 現在のトランザクションの Hibernate セッションを返します
+     * <p>
+     * トランザクションに束縛するリソースのキーに使用します。
+     * {@code REQUIRES_NEW} などで新しいトランザクションを開始した場合は、別のセッションになります。
+     */
+    protected Object transactionSession() {
+
+        return session.getEntityManager().unwrap(Session.class);
+    }
+
     /**
      * 指定された {@ncode node} を削除します
      * <p>
@@ -101,6 +409,8 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
                 log.info("force to remove {}", nodeToRemove.toString());
             }
             session.delete(nodeToRemove);
+            clearNamePathCache();
+            unindexName(nodeToRemove.getId());
         }
     }
 
@@ -108,10 +418,19 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     @Override
     public boolean isRoot(N entity) {
 
-        if (!isPersistent(entity) || !isPathExists(entity)) {
+        if (!isPersistent(entity)) {
             return false;
         }
-        return 1 == getDescendantPaths(entity).size();
+        if (isClosureMemoActive()) {
+            return ancestorIds(entity).size() == 1;
+        }
+        if (isParentPointerEnabled()) {
+            String queryString = "select n.treeRoot from " + nodeEntityName() + " n where n = ?1";
+            return Boolean.TRUE.equals(session.querySingleResult(queryString, new Object[] { entity }));
+        }
+        String queryString = "select max(p.depth) from " + pathEntityName() + " p where p.descendant = ?1";
+        Object maxDepth = session.querySingleResult(queryString, new Object[] { entity });
+        return maxDepth != null && ((Number) maxDepth).intValue() == 0;
     }
 
     /** {@inheritDoc} */
@@ -121,11 +440,8 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         if (!isPersistent(parent) || !isPathExists(parent)) {
             throw new JpaTreeException("parent must be persist.");
         }
-
-        // TODO kesu
-        printPaths(getTreePaths(parent), "hasChild:");
-
-        return 1 < getTreePaths(parent).size();
+        String queryString = "select 1 from " + pathEntityName() + " p where p.ancestor = ?1 and p.depth = 1";
+        return session.queryExists(queryString, new Object[] { parent });
     }
 
     /**
@@ -140,19 +456,30 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     @Override
     public boolean isPathExists(N node) {
 
-        return 0 < getDescendantPaths(node).size();
+        if (isClosureMemoActive() && isPersistent(node)) {
+            return !ancestorIds(node).isEmpty();
+        }
+        String queryString = "select 1 from " + pathEntityName() + " p where p.descendant = ?1";
+        return session.queryExists(queryString, new Object[] { node });
     }
 
     /** {@inheritDoc} */
     @Override
     public boolean parentContains(N parent, N descendant) {
-        return getTree(parent).stream().filter(p -> p.equals(descendant)).findFirst().isPresent();
+
+        if (isClosureMemoActive() && isPersistent(parent) && isPersistent(descendant)) {
+            return ancestorIds(descendant).contains(parent.getId());
+        }
+        String queryString = "select 1 from " + pathEntityName() + " p "
+                + "where p.ancestor = ?1 and p.descendant = ?2";
+        return session.queryExists(queryString, new Object[] { parent, descendant });
     }
 
     /** {@inheritDoc} */
     @Override
     public boolean childBelongsTo(N child, N parent) {
-        return getPath(child).stream().filter(p -> p.equals(parent)).findFirst().isPresent();
+
+        return parentContains(parent, child);
     }
 
     /** {@inheritDoc} */
@@ -161,7 +488,9 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         if (isPersistent(entity)) {
             throw new JpaTreeException("Specified entity is already persist");
         }
-        return treeNodeEntityClass.cast(save(entity));
+        N saved = treeNodeEntityClass.cast(save(entity));
+        indexName(saved);
+        return saved;
     }
 
     /** {@inheritDoc} */
@@ -169,7 +498,10 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     public N update(N entity) {
 
         if (isPersistent(entity)) {
-            return treeNodeEntityClass.cast(save(entity));
+            N saved = treeNodeEntityClass.cast(save(entity));
+            indexName(saved);
+            clearNamePathCache();
+            return saved;
         }
         throw new JpaTreeException("Specified entity is not exist");
     }
@@ -178,6 +510,8 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     public P save(P path) {
         Object o = session.save(path);
         flush();
+        invalidateClosureMemo();
+        invalidateBreadcrumbs(path.getDescendant());
         return treePathEntityClass.cast(o);
     }
 
@@ -185,6 +519,8 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     @Override
     public N insertOrUpdate(N entity) {
         Object o = session.save(entity);
+        indexName(treeNodeEntityClass.cast(o));
+        clearNamePathCache();
         return treeNodeEntityClass.cast(o);
     }
 
@@ -230,6 +566,122 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         return (List<N>) session.queryList(sqlString, Arrays.asList(endsWith).toArray());
     }
 
+    /**
+     * ルートからのノード名の並び（名前パス）に一致するノードを返します
+     * <p>
+     * 末尾のノード名に一致するノードについて、祖先パスのノード名と深さを 1 回のクエリで照合します。
+     * 祖先パスの件数が {@code segments} の件数と一致することで、先頭のノード名がルートであることを確認します。
+     * 同じ名前パスのノードが複数存在する場合は、ID の最も小さいノードを返します。
+     * <p>
+     * 解決した名前パスは最大 {@link #getNamePathCacheSize()} 件までキャッシュします。
+     * 
+     * @param segments ルートから順のノード名のリスト
+     * @return ノード（存在しない場合は null）
+     */
+    @SuppressWarnings("unchecked")
+    public N findByNamePath(List<String> segments) {
+
+        if (segments == null || segments.isEmpty() || segments.contains(null)) {
+            return null;
+        }
+        List<String> key = List.copyOf(segments);
+        Serializable cachedId = namePathCache.get(key);
+        if (cachedId != null) {
+            N cached = find(cachedId);
+            if (cached != null) {
+                return cached;
+            }
+            namePathCache.remove(key);
+        }
+
+        int size = segments.size();
+        List<Object> params = new ArrayList<>(List.of(segments.get(size - 1), (long) size));
+        StringBuilder matches = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            params.add(segments.get(i));
+            matches.append(matches.length() == 0 ? "" : " or ")
+                    .append("(p.depth = ").append(size - 1 - i).append(" and a.nodeName = ?").append(params.size()).append(")");
+        }
+        String queryString = "select n from " + nodeEntityName() + " n where n.id in ("
+                + "select p.descendant.id from " + pathEntityName() + " p join p.ancestor a "
+                + "where p.descendant.nodeName = ?1 "
+                + "group by p.descendant.id "
+                + "having count(p) = ?2 and sum(case when " + matches + " then 1 else 0 end) = ?2) "
+                + "order by n.id";
+        List<N> result = (List<N>) session.queryList(queryString, params.toArray(), 0, 1);
+        if (result.isEmpty()) {
+            return null;
+        }
+        namePathCache.put(key, result.get(0).getId());
+        return result.get(0);
+    }
+
+    /**
+     * {@code root} を含む子ノードのツリーから、ノード名に {@code fragment} を含むノードを検索します
+     * <p>
+     * ノード名の索引（{@link #setNameIndex(NodeNameTrigramIndex)}）が設定されている場合は、
+     * 索引で絞り込んだ候補のみを閉包テーブルと結合して検索します。
+     * 結果は {@code root} からの深さ、ノード名の順に並べ替え、SQL で {@code limit} 件に制限します。
+     * 
+     * @param root     検索するツリーの親ノード
+     * @param fragment 検索文字列
+     * @param limit    最大件数
+     * @return 一致したノードのリスト
+     */
+    public List<N> searchInSubtree(N root, String fragment, int limit) {
+
+        return searchInSubtree(root, '%' + fragment + '%', fragment, limit);
+    }
+
+    /**
+     * {@code root} を含む子ノードのツリーから、ノード名が {@code endsWith} で終わるノードを検索します
+     * 
+     * @param root     検索するツリーの親ノード
+     * @param endsWith 検索文字列
+     * @param limit    最大件数
+     * @return 一致したノードのリスト
+     * @see #searchInSubtree(ClosureTableTreeNode, String, int)
+     */
+    public List<N> searchInSubtreeEndsWith(N root, String endsWith, int limit) {
+
+        return searchInSubtree(root, '%' + endsWith, endsWith, limit);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<N> searchInSubtree(N root, String pattern, String fragment, int limit) {
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit should be lager than 0");
+        }
+        // コミット前で索引に反映していないノードも候補に含める
+        Set<Serializable> candidates = nameIndex == null ? null : nameIndex.candidates(fragment);
+        if (candidates != null && candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String queryString = "select d, p.depth from " + pathEntityName() + " p join p.descendant d "
+                + "where p.ancestor = ?1 and d.nodeName like ?2 ";
+        String orderString = "order by p.depth asc, d.nodeName asc";
+        if (candidates == null) {
+            List<Object[]> rows = (List<Object[]>) session.queryList(queryString + orderString,
+                    new Object[] { root, pattern }, 0, limit);
+            return rows.stream().map(row -> treeNodeEntityClass.cast(row[0])).collect(Collectors.toList());
+        }
+
+        // 候補が多い場合は分割して検索し、各分割の上位を併合する
+        List<Object[]> rows = new ArrayList<>();
+        for (List<Serializable> ids : chunk(new ArrayList<>(candidates))) {
+            rows.addAll((List<Object[]>) session.queryList(queryString + "and d.id in ?3 " + orderString,
+                    new Object[] { root, pattern, ids }, 0, limit));
+        }
+        return rows.stream()
+                .sorted(Comparator.comparingInt((Object[] row) -> ((Number) row[1]).intValue())
+                        .thenComparing(row -> treeNodeEntityClass.cast(row[0]).getNodeName(),
+                                Comparator.nullsFirst(Comparator.naturalOrder())))
+                .limit(limit)
+                .map(row -> treeNodeEntityClass.cast(row[0]))
+                .collect(Collectors.toList());
+    }
+
     /** {@inheritDoc} */
     @Override
     public N createRoot(N entity) {
@@ -266,21 +718,136 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
             throw new JpaTreeException("Child node already part of tree.");
         }
 
-        List<P> parentPaths = new ArrayList<>();
-
-        if (parent != null) {
-            if (isPersistent(parent) && isPathExists(parent)) {
-                parentPaths = getDescendantPaths(parent);
+        if (parent != null && (!isPersistent(parent) || !isPathExists(parent))) {
+            throw new JpaTreeException("parent should be persist");
+        }
+        if (isBulkPathInsert()) {
+            insertPaths(parent, child, orderIndex);
+        } else {
+            if (parent != null) {
+                List<P> parentPaths = getDescendantPaths(parent);
                 clonePaths(child, parentPaths, orderIndex);
-            } else {
-                throw new JpaTreeException("parent should be persist");
             }
+            insertSelfReference(child, 0, orderIndex);
         }
 
-        insertSelfReference(child, 0, orderIndex);
+        if (isLineageKeyEnabled()) {
+            setLineageKey(child, childLineageKey(parent == null ? null : getLineageKey(parent), parent != null, orderIndex, child));
+        }
+        if (isParentPointerEnabled()) {
+            setParentPointer(child, idOf(parent), parent == null);
+        }
+        indexName(child);
+        if (isClosureMemoActive()) {
+            memoizeAncestorIds(child, parent == null ? List.of() : ancestorIds(parent));
+        }
+        markTreeWritten();
         return child;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * ノードとパスは {@code persist} のみ行い、最後に 1 回だけフラッシュします。
+     * {@code hibernate.jdbc.batch_size} と {@code hibernate.order_inserts} を設定することで、
+     * INSERT が JDBC バッチで発行されます。
+     * 
+     * @throws JpaTreeException children に null が含まれる場合
+     * @throws JpaTreeException children に同じインスタンスが複数含まれる場合
+     * @throws JpaTreeException 子ノードが既にツリーに含まれている場合
+     * @throws JpaTreeException parent のパスが未登録の場合
+     */
+    @Override
+    public List<N> addChildren(N parent, List<N> children, int startOrderIndex) {
+
+        if (children == null || children.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (children.stream().anyMatch(c -> c == null)) {
+            throw new JpaTreeException("Child node must not be null.");
+        }
+        Set<N> distinctChildren = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (children.stream().anyMatch(c -> !distinctChildren.add(c))) {
+            throw new JpaTreeException("Child node must not be listed more than once.");
+        }
+        if (parent != null && (!isPersistent(parent) || !isPathExists(parent))) {
+            throw new JpaTreeException("parent should be persist");
+        }
+        List<N> persistentChildren = children.stream().filter(this::isPersistent).collect(Collectors.toList());
+        String countString = "select count(p) from " + pathEntityName() + " p where p.descendant in ?1";
+        for (List<N> nodes : chunk(persistentChildren)) {
+            if (0 < session.queryCount(countString, new Object[] { nodes })) {
+                throw new JpaTreeException("Child node already part of tree.");
+            }
+        }
+
+        List<P> parentPaths = parent == null ? List.of() : getDescendantPaths(parent);
+        List<Serializable> parentAncestorIds = (parent == null || !isClosureMemoActive()) ? List.of() : ancestorIds(parent);
+        String parentKey = (isLineageKeyEnabled() && parent != null) ? getLineageKey(parent) : null;
+        int orderIndex = startOrderIndex;
+        for (N child : children) {
+            if (!isPersistent(child)) {
+                persist(child);
+            }
+            if (isLineageKeyEnabled()) {
+                setLineageKey(child, childLineageKey(parentKey, parent != null, orderIndex, child));
+            }
+            if (isParentPointerEnabled()) {
+                setParentPointer(child, idOf(parent), parent == null);
+            }
+            indexName(child);
+            memoizeAncestorIds(child, parentAncestorIds);
+            for (P path : parentPaths) {
+                P treePath = newTreePathInstance();
+                treePath.setAncestor(path.getAncestor());
+                treePath.setDescendant(child);
+                treePath.setDepth(path.getDepth() + 1);
+                treePath.setOrderIndex(orderIndex);
+                session.persist(treePath);
+            }
+            P self = newTreePathInstance();
+            self.setAncestor(child);
+            self.setDescendant(child);
+            self.setDepth(0);
+            self.setOrderIndex(orderIndex);
+            session.persist(self);
+            orderIndex++;
+        }
+        flush();
+        markTreeWritten();
+        log.debug("{} child(ren) added", children.size());
+        return children;
+    }
+
+    /**
+     * {@code child} の自己参照パスと、{@code parent} の祖先パスを複製したパスを 1 文で登録する
+     * <p>
+     * {@code parent} の深さに関わらず、発行する SQL は INSERT ... SELECT の 1 文のみです。
+     * {@code parent} が {@code null} の場合は自己参照パスのみを登録します。
+     * 
+     * @param parent     親ノード（null 可）
+     * @param child      追加するノード
+     * @param orderIndex 並び順
+     */
+    private void insertPaths(@Nullable N parent, N child, int orderIndex) {
+
+        String selfReference = "select c, c, 0, ?2 from " + nodeEntityName() + " c where c = ?1";
+        String queryString = "insert into " + pathEntityName() + " (ancestor, descendant, depth, orderIndex) ";
+        Object[] params;
+        if (parent == null) {
+            queryString += selfReference;
+            params = new Object[] { child, orderIndex };
+        } else {
+            queryString += "select p.ancestor, c, p.depth + 1, ?2 from "
+                    + pathEntityName() + " p, " + nodeEntityName() + " c "
+                    + "where p.descendant = ?3 and c = ?1 "
+                    + "union all " + selfReference;
+            params = new Object[] { child, orderIndex, parent };
+        }
+        session.executeUpdate(queryString, params);
+        log.debug("paths inserted for {}", child.toString());
+    }
+
     /**
      * {@code parentPaths}の各要素のdescendantを{@code child}にした上でDBを更新する
      * @param child
@@ -336,18 +903,98 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     @Override
     public long getChildrenCount(N parent) {
 
-        return getChildren(parent).size();
+        String queryString = "select count(p) from " + pathEntityName() + " p where p.ancestor = ?1 and p.depth = 1";
+        return session.queryCount(queryString, new Object[] { parent });
     }
 
     /** {@inheritDoc} */
     @Override
-    @SuppressWarnings("unchecked")
     public List<N> getChildren(N parent) {
 
-        String sqlString = "select p.descendant from "
-                + pathEntityName() + " p where p.ancestor = ?1 and p.depth = 1 "
-                + "order by p.orderIndex";
-        return (List<N>) session.queryList(sqlString, Arrays.asList(parent).toArray());
+        return getTree(parent, 1, 1);
+    }
+
+    /**
+     * {@code parent} の子ノードを {@code (orderIndex, id)} の順で {@code pageSize} 件ずつ返します
+     * <p>
+     * {@code after} より後の子ノードをキーの範囲で検索するため（キーセットページング）、
+     * OFFSET による読み飛ばしを行わず、どのページも同じコストで取得できます。
+     * パスのテーブルに {@code (ancestor, depth, orderIndex, descendant)} の複合索引を作成してください。
+     * 
+     * @param parent   親ノード
+     * @param after    前のページの {@link ChildrenPage#next()}（null の場合は最初のページ）
+     * @param pageSize 1 ページの件数
+     * @return 子ノードのページ
+     * @throws IllegalArgumentException pageSize が 1 未満の場合
+     */
+    @SuppressWarnings("unchecked")
+    public ChildrenPage<N> getChildrenPage(N parent, @Nullable ChildCursor after, int pageSize) {
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize should be lager than 0");
+        }
+        List<Object> params = new ArrayList<>(List.of(parent));
+        String queryString = "select p.descendant, p.orderIndex from " + pathEntityName() + " p "
+                + "where p.ancestor = ?1 and p.depth = 1 ";
+        if (after != null) {
+            params.add(after.orderIndex());
+            params.add(after.id());
+            queryString += "and (p.orderIndex > ?2 or (p.orderIndex = ?2 and p.descendant.id > ?3)) ";
+        }
+        queryString += "order by p.orderIndex asc, p.descendant.id asc";
+        // 次のページの有無を判定するため 1 件多く取得する
+        List<Object[]> rows = (List<Object[]>) session.queryList(queryString, params.toArray(), 0, pageSize + 1);
+
+        List<N> nodes = rows.stream().limit(pageSize).map(row -> treeNodeEntityClass.cast(row[0])).collect(Collectors.toList());
+        ChildCursor next = null;
+        if (rows.size() > pageSize) {
+            Object[] last = rows.get(pageSize - 1);
+            next = new ChildCursor(((Number) last[1]).intValue(), idOf(treeNodeEntityClass.cast(last[0])));
+        }
+        return new ChildrenPage<>(nodes, next);
+    }
+
+    /**
+     * {@code parent} の子ノードを、各子ノードの直下の子ノード数と子孫ノード数とともに返します
+     * <p>
+     * 子ノードのパスと、子ノードを祖先とするパスを結合し、1 回の集約クエリで取得します。
+     * 並び順は {@link #getChildren(ClosureTableTreeNode)} と同じです。
+     * 
+     * @param parent 親ノード
+     * @return 子ノードと件数のリスト
+     */
+    @SuppressWarnings("unchecked")
+    public List<ChildWithCounts<N>> getChildrenWithCounts(N parent) {
+
+        String queryString = "select d, c.orderIndex, "
+                + "sum(case when s.depth = 1 then 1 else 0 end), count(s) - 1 "
+                + "from " + pathEntityName() + " c join c.descendant d "
+                + "join " + pathEntityName() + " s on s.ancestor = d "
+                + "where c.ancestor = ?1 and c.depth = 1 "
+                + "group by d, c.orderIndex "
+                + "order by c.orderIndex asc";
+        List<Object[]> rows = (List<Object[]>) session.queryList(queryString, new Object[] { parent });
+        return rows.stream()
+                .map(row -> new ChildWithCounts<>(treeNodeEntityClass.cast(row[0]),
+                        ((Number) row[2]).longValue(), ((Number) row[3]).longValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@link #IN_CLAUSE_CHUNK_SIZE} 件ごとに 1 回のクエリで取得します。
+     */
+    @Override
+    public Map<N, List<N>> getChildren(Collection<N> parents) {
+
+        String queryString = "select p.ancestor.id, p.descendant from " + pathEntityName() + " p "
+                + "where p.ancestor in ?1 and p.depth = 1 "
+                + "order by p.orderIndex asc";
+        Map<Object, List<N>> grouped = groupById(queryString, parents);
+        Map<N, List<N>> result = new LinkedHashMap<>();
+        parents.forEach(parent -> result.put(parent, grouped.getOrDefault(parent.getId(), new ArrayList<>())));
+        return result;
     }
 
     /** {@inheritDoc} */
@@ -365,37 +1012,260 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     @Override
     public int getLevel(N node) {
 
-        if (!isPersistent(node) || !isPathExists(node)) {
+        int level = isPersistent(node) ? (int) countPaths(node) : 0;
+        if (level == 0) {
             throw new JpaTreeException("specified path not registered. " + node.toString());
         }
-        return getDescendantPaths(node).size();
+        return level;
     }
 
     /** {@inheritDoc} */
     @Override
-    @SuppressWarnings("unchecked")
     public List<N> getTree(N parent) {
-        String queryString = "select p.descendant from " + pathEntityName() + " p "
-                + "where p.ancestor = ?1 "
-                + "order by p.depth asc";
-        List<Object> params = List.of(parent);
-        List<N> result = (List<N>) session.queryList(queryString, params.toArray());
-        return ((result == null || result.isEmpty()) ? new ArrayList<>() : result);
+
+        return getTree(parent, 0, Integer.MAX_VALUE);
     }
 
     /** {@inheritDoc} */
     @Override
     @SuppressWarnings("unchecked")
-    public List<N> getPath(N node) {
+    public List<N> getTree(N parent, int minDepth, int maxDepth) {
 
-        String queryString = "select p.ancestor from " + pathEntityName() + " p "
-                + "where p.descendant = ?1 "
-                + "order by p.depth desc";
-        List<Object> params = List.of(node);
-        List<N> result = (List<N>) session.queryList(queryString, params.toArray());
+        List<Object> params = new ArrayList<>(List.of(parent));
+        String queryString = "select p.descendant from " + pathEntityName() + " p "
+                + "where p.ancestor = ?1 "
+                + depthCondition(minDepth, maxDepth, params)
+                + "order by p.depth asc, p.orderIndex asc";
+        List<N> result = (List<N>) treeQueryList(queryString, params.toArray());
         return ((result == null || result.isEmpty()) ? new ArrayList<>() : result);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public List<N> getPath(N node) {
+
+        TransactionalBreadcrumbs current = breadcrumbs;
+        if (current == null || node == null || node.getId() == null) {
+            return getPath(node, Integer.MAX_VALUE);
+        }
+        BreadcrumbCache cache = current.cache();
+        List<Serializable> ids = cache.get(node.getId());
+        if (ids == null) {
+            long epoch = current.epoch();
+            ids = ancestorIds(node);
+            if (ids.isEmpty()) {
+                // パスが存在しないノードは、後で追加される可能性があるためキャッシュしない
+                return new ArrayList<>();
+            }
+            if (epoch >= 0) {
+                cache.put(node.getId(), ids, epoch);
+            }
+        }
+        List<N> result = loadNodesInOrder(ids);
+        if (result == null) {
+            // DAO を通さずにノードが削除されている
+            cache.invalidateSubtree(node.getId());
+            return getPath(node, Integer.MAX_VALUE);
+        }
+        return result;
+    }
+
+    /**
+     * {@code ids} のノードを 1 回のクエリで取得し、{@code ids} の順に並べて返します
+     * 
+     * @param ids ノード ID
+     * @return ノードのコレクション（存在しないノードがある場合は null）
+     */
+    @SuppressWarnings("unchecked")
+    private List<N> loadNodesInOrder(List<Serializable> ids) {
+
+        String queryString = "select n from " + nodeEntityName() + " n where n.id in ?1";
+        Map<Serializable, N> byId = new HashMap<>();
+        ((List<N>) session.queryList(queryString, new Object[] { ids })).forEach(n -> byId.put(n.getId(), n));
+        List<N> result = new ArrayList<>(ids.size());
+        for (Serializable id : ids) {
+            N n = byId.get(id);
+            if (n == null) {
+                return null;
+            }
+            result.add(n);
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<N> getPath(N node, int maxLevelsUp) {
+
+        List<Object> params = new ArrayList<>(List.of(node));
+        String queryString = "select p.ancestor from " + pathEntityName() + " p "
+                + "where p.descendant = ?1 "
+                + depthCondition(0, maxLevelsUp, params)
+                + "order by p.depth desc";
+        List<N> result = (List<N>) treeQueryList(queryString, params.toArray());
+        return ((result == null || result.isEmpty()) ? new ArrayList<>() : result);
+    }
+
+    /**
+     * {@code parent} を含む子ノードのツリーのノード ID を返します
+     * <p>
+     * ID のみを取得するため、エンティティの生成と永続化コンテキストへの登録を行いません。
+     * 並び順は {@link #getTree(ClosureTableTreeNode)} と同じです。
+     * 
+     * @param parent ツリーの親ノード
+     * @return ノード ID の配列
+     */
+    public long[] getTreeIds(N parent) {
+
+        String queryString = "select p.descendant.id from " + pathEntityName() + " p "
+                + "where p.ancestor = ?1 "
+                + "order by p.depth asc, p.orderIndex asc";
+        return toIds(session.queryList(queryString, new Object[] { parent }));
+    }
+
+    /**
+     * ルートから {@code node} までのノード ID を返します
+     * <p>
+     * ID のみを取得するため、エンティティの生成と永続化コンテキストへの登録を行いません。
+     * 並び順は {@link #getPath(ClosureTableTreeNode)} と同じです。
+     * 
+     * @param node ノード
+     * @return ノード ID の配列
+     */
+    public long[] getPathIds(N node) {
+
+        String queryString = "select p.ancestor.id from " + pathEntityName() + " p "
+                + "where p.descendant = ?1 "
+                + "order by p.depth desc";
+        return toIds(session.queryList(queryString, new Object[] { node }));
+    }
+
+    /**
+     * {@code parent} の子ノードの ID、ノード名、並び順を返します
+     * <p>
+     * エンティティを生成せずにスカラー値のみを取得します。
+     * 並び順は {@link #getChildren(ClosureTableTreeNode)} と同じです。
+     * 
+     * @param parent 親ノード
+     * @return 子ノードの射影のリスト
+     */
+    @SuppressWarnings("unchecked")
+    public List<NodeSummary> getChildrenSummaries(N parent) {
+
+        String queryString = "select d.id, d.nodeName, p.orderIndex from " + pathEntityName() + " p "
+                + "join p.descendant d "
+                + "where p.ancestor = ?1 and p.depth = 1 "
+                + "order by p.orderIndex asc";
+        List<Object[]> rows = (List<Object[]>) session.queryList(queryString, new Object[] { parent });
+        return rows.stream()
+                .map(row -> new NodeSummary(((Number) row[0]).longValue(), (String) row[1], ((Number) row[2]).intValue()))
+                .collect(Collectors.toList());
+    }
+
+    private long[] toIds(List<?> ids) {
+
+        return ids.stream().mapToLong(id -> ((Number) id).longValue()).toArray();
+    }
+
+    /**
+     * {@code parent} を含む子ノードのツリーを表示順（親が先、兄弟は並び順）で返します
+     * <p>
+     * 系統キーの範囲検索のみで取得するため、閉包テーブルとの結合や文字列の集約を行いません。
+     * 
+     * @param parent ツリーの親ノード
+     * @return 表示順に並んだノードのリスト
+     * @throws JpaTreeException ノードエンティティが {@link LineageKeyTreeNode} を実装していない場合
+     * @throws JpaTreeException {@code parent} の系統キーが未設定の場合
+     */
+    @SuppressWarnings("unchecked")
+    public List<N> getTreeInDisplayOrder(N parent) {
+
+        if (!isLineageKeyEnabled()) {
+            throw new JpaTreeException(treeNodeEntityClass.getSimpleName() + " does not implement LineageKeyTreeNode.");
+        }
+        String key = getLineageKey(parent);
+        if (key == null) {
+            throw new JpaTreeException("lineage key not assigned. " + parent.toString());
+        }
+        String queryString = "select n from " + nodeEntityName() + " n "
+                + "where n.lineageKey >= ?1 and n.lineageKey < ?2 "
+                + "order by n.lineageKey";
+        return (List<N>) session.queryList(queryString, new Object[] { key, LineageKey.upperBound(key) });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@link #IN_CLAUSE_CHUNK_SIZE} 件ごとに 1 回のクエリで取得します。
+     */
+    @Override
+    public Map<N, List<N>> getPaths(Collection<N> nodes) {
+
+        String queryString = "select p.descendant.id, p.ancestor from " + pathEntityName() + " p "
+                + "where p.descendant in ?1 "
+                + "order by p.depth desc";
+        Map<Object, List<N>> grouped = groupById(queryString, nodes);
+        Map<N, List<N>> result = new LinkedHashMap<>();
+        nodes.forEach(node -> result.put(node, grouped.getOrDefault(node.getId(), new ArrayList<>())));
+        return result;
+    }
+
+    /**
+     * 1 列目の ID ごとに、2 列目のノードをクエリの順でまとめる
+     * <p>
+     * クエリのパラメータ {@code ?1} には {@code nodes} のうち永続化済みのノードを
+     * {@link #IN_CLAUSE_CHUNK_SIZE} 件ごとに分割して渡します。
+     * 
+     * @param queryString 1 列目が ID、2 列目がノードのクエリ
+     * @param nodes       ノードのコレクション
+     * @return ID とノードのリストのマップ
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, List<N>> groupById(String queryString, Collection<N> nodes) {
+
+        List<N> persistentNodes = nodes.stream().filter(this::isPersistent).distinct().collect(Collectors.toList());
+        Map<Object, List<N>> grouped = new HashMap<>();
+        for (List<N> chunk : chunk(persistentNodes)) {
+            for (Object[] row : (List<Object[]>) session.queryList(queryString, new Object[] { chunk })) {
+                grouped.computeIfAbsent(row[0], k -> new ArrayList<>()).add(treeNodeEntityClass.cast(row[1]));
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * {@code p.depth} の範囲の条件を返す
+     * <p>
+     * 範囲が制限されていない場合は条件を付与しません。条件に使用するパラメータは {@code params} に追加します。
+     * 
+     * @param minDepth 最小の深さ
+     * @param maxDepth 最大の深さ（{@code Integer.MAX_VALUE} の場合は制限なし）
+     * @param params   パラメータのリスト
+     * @return 条件の文字列
+     * @throws IllegalArgumentException 範囲が不正な場合
+     */
+    private String depthCondition(int minDepth, int maxDepth, List<Object> params) {
+
+        if (minDepth < 0 || maxDepth < minDepth) {
+            throw new IllegalArgumentException("invalid depth range: " + minDepth + " - " + maxDepth);
+        }
+        if (minDepth == maxDepth) {
+            params.add(minDepth);
+            return "and p.depth = ?" + params.size() + " ";
+        }
+        String condition = "";
+        if (minDepth > 0) {
+            params.add(minDepth);
+            condition += "and p.depth >= ?" + params.size() + " ";
+        }
+        if (maxDepth < Integer.MAX_VALUE) {
+            params.add(maxDepth);
+            condition += "and p.depth <= ?" + params.size() + " ";
+        }
+        return condition;
+    }
+
     /** {@inheritDoc} */
     @Override
     @SuppressWarnings("unchecked")
@@ -408,6 +1278,99 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         return (List<P>) session.queryList(queryString, params.toArray());
     }
 
+    /**
+     * {@code parent} を含む子ノードのツリーをストリームで返す
+     * <p>
+     * {@link #getTree(ClosureTableTreeNode)} と同じ順で、結果をリストに展開せずに読み込みます。
+     * 読み込んだエンティティは読み取り専用で、{@code streamClearInterval} 件ごとに永続化コンテキストから切り離されます。
+     * 呼び出し前から永続化コンテキストにあるエンティティは切り離されません。
+     * ストリームはカーソルを保持しているため、必ず close してください。
+     * 
+     * @param parent 親ノード
+     * @return ノードのストリーム
+     */
+    public Stream<N> streamTree(N parent) {
+
+        String queryString = "select p.descendant from " + pathEntityName() + " p "
+                + "where p.ancestor = ?1 "
+                + "order by p.depth asc";
+        return stream(queryString, new Object[] { parent }).map(treeNodeEntityClass::cast);
+    }
+
+    /**
+     * {@code parent} を含む子ノードのツリーのパスをストリームで返す
+     * <p>
+     * ストリームはカーソルを保持しているため、必ず close してください。
+     * 
+     * @param parent 親ノード
+     * @return パスのストリーム
+     * @see #streamTree(ClosureTableTreeNode)
+     */
+    public Stream<P> streamTreePaths(N parent) {
+
+        String queryString = "select p from " + pathEntityName() + " p "
+                + "where p.ancestor = ?1 "
+                + "order by p.depth asc";
+        return stream(queryString, new Object[] { parent }).map(treePathEntityClass::cast);
+    }
+
+    /**
+     * 全てのパスをストリームで返す
+     * <p>
+     * ストリームはカーソルを保持しているため、必ず close してください。
+     * 
+     * @return パスのストリーム
+     * @see #streamTree(ClosureTableTreeNode)
+     */
+    public Stream<P> streamAllTreePaths() {
+
+        String queryString = "select p from " + pathEntityName() + " p";
+        return stream(queryString, null).map(treePathEntityClass::cast);
+    }
+
+    /**
+     * クエリの結果を、{@code streamClearInterval} 件ごとに読み込んだエンティティを切り離すストリームで返す
+     * <p>
+     * 永続化コンテキスト全体はクリアしないため、呼び出し側の未フラッシュの変更は失われません。
+     */
+    private Stream<?> stream(String queryString, Object[] params) {
+
+        int interval = streamClearInterval;
+        List<Object> emitted = new ArrayList<>();
+        Session hibernateSession = session.getEntityManager().unwrap(Session.class);
+        return session.queryStream(queryString, params, streamFetchSize).peek(e -> {
+            if (interval <= 0) {
+                return;
+            }
+            if (emitted.size() >= interval) {
+                emitted.forEach(o -> detachStreamed(hibernateSession, o));
+                emitted.clear();
+            }
+            emitted.add(e);
+        });
+    }
+
+    /**
+     * ストリームが読み込んだエンティティ（パスの場合は祖先と子孫のノードも）を永続化コンテキストから切り離す
+     * <p>
+     * 読み取り専用でないエンティティは、ストリームの前から呼び出し側が保持しているものとして切り離しません。
+     */
+    private void detachStreamed(Session hibernateSession, Object entity) {
+
+        if (entity instanceof TreePath<?> path) {
+            detachReadOnly(hibernateSession, path.getAncestor());
+            detachReadOnly(hibernateSession, path.getDescendant());
+        }
+        detachReadOnly(hibernateSession, entity);
+    }
+
+    private void detachReadOnly(Session hibernateSession, Object entity) {
+
+        if (entity != null && hibernateSession.contains(entity) && hibernateSession.isReadOnly(entity)) {
+            session.detach(entity);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     @SuppressWarnings("unchecked")
@@ -425,28 +1388,59 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     @Override
     public N getParent(N node) {
 
-        if (!isPersistent(node) || !isPathExists(node)) {
+        if (!isPersistent(node)) {
             throw new JpaTreeException("specified path not registered.");
         }
-        if (isRoot(node)) {
-            return null;
+        if (isClosureMemoActive()) {
+            List<Serializable> ancestorIds = ancestorIds(node);
+            if (ancestorIds.isEmpty()) {
+                throw new JpaTreeException("specified path not registered.");
+            }
+            return ancestorIds.size() == 1 ? null : find(ancestorIds.get(ancestorIds.size() - 2));
         }
-        String sqlString = "select p from " + pathEntityName() + " p "
+        if (isParentPointerEnabled()) {
+            String queryString = "select n.parentId, n.treeRoot from " + nodeEntityName() + " n where n = ?1";
+            Object[] pointer = (Object[]) session.querySingleResult(queryString, new Object[] { node });
+            if (pointer == null || (pointer[0] == null && !Boolean.TRUE.equals(pointer[1]))) {
+                throw new JpaTreeException("specified path not registered.");
+            }
+            return pointer[0] == null ? null : find((Serializable) pointer[0]);
+        }
+        String sqlString = "select p.ancestor from " + pathEntityName() + " p "
                 + "where p.descendant = ?1 and  p.depth = 1";
-        @SuppressWarnings("unchecked")
-        List<P> resultList = (List<P>) session.queryList(sqlString, Arrays.asList(node).toArray());
-        return resultList.get(0).getAncestor();
+        Object parent = session.querySingleResult(sqlString, Arrays.asList(node).toArray());
+        if (parent == null && !isPathExists(node)) {
+            throw new JpaTreeException("specified path not registered.");
+        }
+        return parent == null ? null : treeNodeEntityClass.cast(parent);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@link #IN_CLAUSE_CHUNK_SIZE} 件ごとに 1 回のクエリで取得します。
+     */
+    @Override
+    public Map<N, N> getParents(Collection<N> nodes) {
+
+        String queryString = "select p.descendant.id, p.ancestor from " + pathEntityName() + " p "
+                + "where p.descendant in ?1 and p.depth = 1";
+        Map<Object, List<N>> grouped = groupById(queryString, nodes);
+        Map<N, N> result = new LinkedHashMap<>();
+        nodes.forEach(node -> {
+            List<N> parents = grouped.get(node.getId());
+            result.put(node, parents == null ? null : parents.get(0));
+        });
+        return result;
     }
 
     /** {@inheritDoc} */
     @Override
     public List<N> getSiblings(N node) {
 
-        if (!isPersistent(node) || !isPathExists(node)) {
-            throw new JpaTreeException("specified path not registered.");
-        }
-        if (!isRoot(node)) {
-            return getChildren(getParent(node));
+        N parent = getParent(node);
+        if (parent != null) {
+            return getChildren(parent);
         }
         return getRootNodes();
     }
@@ -458,9 +1452,12 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         String queryString = "select p.ancestor from " + pathEntityName() + " p where p.depth = 0 "
                 + "and not exists (select 'x' from " + pathEntityName() + " p2 "
                 + "where p2.descendant = p.descendant and p2.depth > 0)";
+        if (isParentPointerEnabled()) {
+            queryString = "select n from " + nodeEntityName() + " n where n.treeRoot = true";
+        }
         List<Object> parameters = new ArrayList<>();
         @SuppressWarnings("unchecked")
-        List<ClosureTableTreeNode> resultList = (List<ClosureTableTreeNode>) session.queryList(queryString, parameters.toArray());
+        List<ClosureTableTreeNode> resultList = (List<ClosureTableTreeNode>) treeQueryList(queryString, parameters.toArray());
         List<N> result = new ArrayList<>();
         resultList.forEach(p -> {
             result.add(treeNodeEntityClass.cast(p));
@@ -488,70 +1485,514 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
             throw new JpaTreeException("parent is already root node.");
         }
 
-        // 移動元の子ノードツリーの（移動元ノード含む）コレクション
-        List<N> targetNodes = getTree(parent);
-
         // 移動元の子ノードツリーに moveTo が含まれている場合は例外をスロー
-        if (moveTo != null
-                && !targetNodes.isEmpty()
-                && targetNodes.stream().anyMatch(n -> n.equals(moveTo))) {
+        if (moveTo != null && parentContains(parent, moveTo)) {
 
             throw new JpaTreeException(
                     "The destination node must not be included in the source tree node. node = " + moveTo.toString());
         }
 
-        // 移動先のノードパス（null を許容）
-        List<N> moveToPath = moveTo == null ? List.of() : getPath(moveTo);
-        // 移動元のノードパス（移動元ノード含む）コレクション
-        List<N> parentPath = getPath(parent);
-        // 移動元のノードパスから 移動元ノードを削除
-        parentPath.remove(parent);
-
-        // 新パスマップ
-        Map<N, List<P>> newPathsMap = new HashMap<>();
-        // 移動元の子ノード（移動元ノード含む）コレクションをループさせ、移動先のパスを生成
-        for (N key : targetNodes) {
-            // 各移動元子ノードのパスから、移動元ノードパス（移動元ノード含まない）を除いた部分を tail に保存
-            List<N> tail = getPath(key).stream().filter(n -> {
-                if (parentPath.stream().anyMatch(m -> m.equals(n))) {
-                    return false;
+        // 呼び出し側の未フラッシュの変更を、一括更新の前に DB へ反映する
+        session.flush();
+
+        // 移動元ツリーの外側の祖先から、移動元ツリーの各ノードへのパスを削除
+        String deleteString = "delete from " + pathEntityName() + " p "
+                + "where p.descendant in (select s.descendant from " + pathEntityName() + " s where s.ancestor = ?1) "
+                + "and p.ancestor not in (select s.descendant from " + pathEntityName() + " s where s.ancestor = ?1)";
+        session.executeUpdate(deleteString, new Object[] { parent });
+
+        // 移動元ノードの自己参照パスの orderIndex を更新
+        String updateString = "update " + pathEntityName() + " p set p.orderIndex = ?2 "
+                + "where p.descendant = ?1";
+        session.executeUpdate(updateString, new Object[] { parent, orderIndex });
+
+        if (moveTo != null) {
+            insertAncestorPaths(parent, moveTo, orderIndex);
+        }
+        if (isLineageKeyEnabled()) {
+            relocateLineageKeys(parent, moveTo, orderIndex);
+        }
+        if (isParentPointerEnabled()) {
+            // 永続化コンテキストのノードは一括更新前の状態のため、UPDATE 文で更新する
+            updateParentPointer(parent, idOf(moveTo), moveTo == null);
+        }
+
+        clearNamePathCache();
+        invalidateClosureMemo();
+        invalidateBreadcrumbs(parent);
+
+        // 一括更新したパスとノードのみ、永続化コンテキストで DB の状態に合わせる
+        syncManagedEntities(subtreeIds(parent), true,
+                (isLineageKeyEnabled() || isParentPointerEnabled()) ? session::refresh : null);
+    }
+
+    /**
+     * {@code root} を含む子ノードのツリーのノード ID を返す
+     * 
+     * @param root ツリーの親ノード
+     * @return ノード ID のリスト
+     */
+    private List<?> subtreeIds(N root) {
+
+        String queryString = "select s.descendant.id from " + pathEntityName() + " s where s.ancestor = ?1";
+        return session.queryList(queryString, new Object[] { root });
+    }
+
+    /**
+     * 一括更新、一括削除したパスとノードを、永続化コンテキスト内で DB の状態に合わせる
+     * <p>
+     * 永続化コンテキスト全体はクリアせず、対象のノードを子孫とする管理下のパスの切り離しと、
+     * 管理下の対象のノードへの {@code nodeAction} の適用のみを行います。
+     * それ以外のエンティティは、呼び出し側が保持したまま管理下に残ります。
+     * 呼び出し側の変更を失わないよう、一括更新の前にフラッシュしておいてください。
+     * 
+     * @param nodeIds     対象のノード ID（null の場合は全てのノード）
+     * @param detachPaths true:対象のノードを子孫とする管理下のパスを切り離す
+     * @param nodeAction  管理下の対象のノードに適用する処理（null の場合は何もしない）
+     */
+    private void syncManagedEntities(@Nullable Collection<?> nodeIds, boolean detachPaths, @Nullable Consumer<Object> nodeAction) {
+
+        Set<?> ids = nodeIds == null ? null : new HashSet<>(nodeIds);
+        SessionImplementor implementor = session.getEntityManager().unwrap(SessionImplementor.class);
+        for (Map.Entry<Object, EntityEntry> entry : implementor.getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+            Object entity = entry.getKey();
+            if (treePathEntityClass.isInstance(entity)) {
+                N descendant = treePathEntityClass.cast(entity).getDescendant();
+                if (detachPaths && descendant != null && (ids == null || ids.contains(descendant.getId()))) {
+                    session.detach(entity);
                 }
-                return true;
-            }).collect(Collectors.toList());
-
-
-            // 移動先ノードパスとtailを一つにしたコレクション
-            List<N> newOrder = Stream.concat(moveToPath.stream(), tail.stream()).collect(Collectors.toList());
-            // 新しいパスを保持するコレクション
-            List<P> newPaths = new ArrayList<>();
-            // newOrder のサイズ（depth計算用）
-            int count = newOrder.size();
-            // orderIndex を算出
-            int orderIdx = (key.equals(parent) ? orderIndex : findTreePath(key, key).getOrderIndex());
-            // パス生成ループ
-            for (N node : newOrder) {
-                // 新しいインスタンスを取得
-                P path = newTreePathInstance();
-                path.setAncestor(node);
-                path.setDescendant(key);
-                path.setDepth(--count);
-                path.setOrderIndex(orderIdx);
-                newPaths.add(path);
-            }
-            newPathsMap.put(key, newPaths);
-        }
-
-        int num = targetNodes.size() - 1;
-        // targetNodes を逆順に並べ替えて、パスを削除
-        IntStream.rangeClosed(0, num).mapToObj(i -> targetNodes.get(num - i)).forEach(nodeToDelete -> {
-            deletePath(nodeToDelete);
-        });
+            } else if (nodeAction != null && treeNodeEntityClass.isInstance(entity)
+                    && (ids == null || ids.contains(treeNodeEntityClass.cast(entity).getId()))) {
+                nodeAction.accept(entity);
+            }
+        }
+    }
+
+    /**
+     * {@code newParent} の祖先パス（{@code newParent} 含む）と {@code root} のツリーのパスの直積を 1 文で登録する
+     * 
+     * @param root       ツリーの親ノード
+     * @param newParent  新しい親ノード
+     * @param orderIndex {@code root} の並び順
+     */
+    private void insertAncestorPaths(N root, N newParent, int orderIndex) {
+
+        String insertString = "insert into " + pathEntityName() + " (ancestor, descendant, depth, orderIndex) "
+                + "select a.ancestor, s.descendant, a.depth + s.depth + 1, "
+                + "case when s.depth = 0 then ?3 else e.orderIndex end "
+                + "from " + pathEntityName() + " a, " + pathEntityName() + " s, " + pathEntityName() + " e "
+                + "where a.descendant = ?2 and s.ancestor = ?1 "
+                // 並び順は各ノードの自己参照パスから取得する（ツリー内のパスの並び順は更新されていない場合がある）
+                + "and e.ancestor = s.descendant and e.descendant = s.descendant and e.depth = 0";
+        session.executeUpdate(insertString, new Object[] { root, newParent, orderIndex });
+    }
+
+    /**
+     * 現在のトランザクションで祖先 ID のメモを使用するかどうかを返します
+     * <p>
+     * Spring のトランザクション同期が有効な場合に使用します。
+     * 
+     * @return true:メモを使用する
+     */
+    protected boolean isClosureMemoActive() {
+
+        return TransactionResources.isActive();
+    }
+
+    /**
+     * 現在のトランザクションの祖先 ID のメモを返す
+     * 
+     * @return ノード ID と祖先 ID のマップ（トランザクション同期が無効な場合は null）
+     * @see ClosureMemo
+     */
+    private Map<Serializable, List<Serializable>> closureMemo() {
+
+        return isClosureMemoActive() ? ancestorMemo.current() : null;
+    }
+
+    /**
+     * {@code node} の祖先ノードの ID を返します
+     * <p>
+     * トランザクション内では、ノードごとに最初の 1 回のみクエリを発行し、以降はメモから返します。
+     * 
+     * @param node ノード
+     * @return ルートから順の祖先ノードの ID（{@code node} を含む。パスが存在しない場合は空）
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Serializable> ancestorIds(N node) {
+
+        Map<Serializable, List<Serializable>> memo = closureMemo();
+        if (memo != null) {
+            List<Serializable> memoized = memo.get(node.getId());
+            if (memoized != null) {
+                return memoized;
+            }
+        }
+        String queryString = "select p.ancestor.id from " + pathEntityName() + " p "
+                + "where p.descendant = ?1 "
+                + "order by p.depth desc";
+        List<Serializable> ids = List.copyOf((List<Serializable>) session.queryList(queryString, new Object[] { node }));
+        if (memo != null) {
+            memo.put(node.getId(), ids);
+        }
+        return ids;
+    }
+
+    /**
+     * DAO での更新に合わせて、{@code node} の祖先 ID をメモに登録します
+     * 
+     * @param node              ノード
+     * @param parentAncestorIds 親ノードの祖先 ID（ルートの場合は空）
+     */
+    private void memoizeAncestorIds(N node, List<Serializable> parentAncestorIds) {
 
-        // 新しいパスを保存
-        newPathsMap.forEach((k, v) -> {
-            v.forEach(session::save);
+        Map<Serializable, List<Serializable>> memo = closureMemo();
+        if (memo == null) {
+            return;
+        }
+        List<Serializable> ids = new ArrayList<>(parentAncestorIds);
+        ids.add(node.getId());
+        memo.put(node.getId(), List.copyOf(ids));
+    }
+
+    /**
+     * 現在のトランザクションの祖先 ID のメモを破棄します
+     * <p>
+     * 複数のノードの祖先が変わる更新（移動、ツリーの削除、パスの保存）の後に呼び出します。
+     */
+    protected void invalidateClosureMemo() {
+
+        if (isClosureMemoActive()) {
+            ancestorMemo.invalidate();
+        }
+    }
+
+    /**
+     * ノードが系統キーを持つかどうかを返します
+     * 
+     * @return true:ノードエンティティが {@link LineageKeyTreeNode} を実装している
+     */
+    public boolean isLineageKeyEnabled() {
+
+        return LineageKeyTreeNode.class.isAssignableFrom(treeNodeEntityClass);
+    }
+
+    /**
+     * DB に登録されている {@code node} の系統キーを返します
+     * 
+     * @param node ノード
+     * @return 系統キー（未設定の場合は null）
+     */
+    protected String getLineageKey(N node) {
+
+        String queryString = "select n.lineageKey from " + nodeEntityName() + " n where n = ?1";
+        return (String) session.querySingleResult(queryString, new Object[] { node });
+    }
+
+    /**
+     * {@code node} に系統キーを設定します
+     * <p>
+     * {@code node} が永続化コンテキストに含まれない場合は UPDATE 文で更新します。
+     * 
+     * @param node       ノード
+     * @param lineageKey 系統キー（null 可）
+     */
+    protected void setLineageKey(N node, @Nullable String lineageKey) {
+
+        ((LineageKeyTreeNode) node).setLineageKey(lineageKey);
+        if (!session.contains(node)) {
+            // DbSession は null をバインドできないため、null の場合はリテラルで更新する
+            if (lineageKey == null) {
+                String updateString = "update " + nodeEntityName() + " n set n.lineageKey = null where n = ?1";
+                session.executeUpdate(updateString, new Object[] { node });
+            } else {
+                String updateString = "update " + nodeEntityName() + " n set n.lineageKey = ?1 where n = ?2";
+                session.executeUpdate(updateString, new Object[] { lineageKey, node });
+            }
+        }
+    }
+
+    /**
+     * 親ノードの系統キーから {@code child} の系統キーを生成します
+     * 
+     * @param parentKey  親ノードの系統キー
+     * @param hasParent  親ノードが存在するかどうか
+     * @param orderIndex {@code child} の並び順
+     * @param child      子ノード
+     * @return 系統キー（親ノードの系統キーが未設定の場合は null）
+     */
+    private String childLineageKey(@Nullable String parentKey, boolean hasParent, int orderIndex, N child) {
+
+        if (hasParent && parentKey == null) {
+            log.warn("lineage key of parent not assigned. call rebuildLineageKeys(). child = {}", child.toString());
+            return null;
+        }
+        return LineageKey.child(parentKey, orderIndex, child.getId());
+    }
+
+    /**
+     * {@code root} のツリーの系統キーを、{@code newParent} の直下に移動した系統キーに 1 文で置き換えます
+     * <p>
+     * ツリーの各ノードの系統キーの接頭辞（{@code root} の系統キー）のみを置き換えます。
+     * 
+     * @param root       ツリーの親ノード
+     * @param newParent  新しい親ノード（null の場合はルート）
+     * @param orderIndex {@code root} の並び順
+     */
+    private void relocateLineageKeys(N root, @Nullable N newParent, int orderIndex) {
+
+        String oldKey = getLineageKey(root);
+        String parentKey = newParent == null ? null : getLineageKey(newParent);
+        String newKey = childLineageKey(parentKey, newParent != null, orderIndex, root);
+        if (oldKey == null || newKey == null) {
+            log.warn("lineage key not assigned. call rebuildLineageKeys(). root = {}", root.toString());
+            return;
+        }
+        // 呼び出し側の未フラッシュの変更を、一括更新の前に DB へ反映する
+        session.flush();
+        String updateString = "update " + nodeEntityName() + " n "
+                + "set n.lineageKey = concat(?1, substring(n.lineageKey, ?2)) "
+                + "where n.id in (select s.descendant.id from " + pathEntityName() + " s where s.ancestor = ?3)";
+        session.executeUpdate(updateString, new Object[] { newKey, oldKey.length() + 1, root });
+    }
+
+    /**
+     * 全てのノードの系統キーを閉包テーブルから再生成します
+     * <p>
+     * 既存のツリーに系統キーを導入する場合や、系統キーが不整合になった場合に使用します。
+     * 親子関係と並び順を 1 回ずつのクエリで取得し、ルートから順に系統キーを生成して更新します。
+     * ツリーに含まれないノードの系統キーは削除します。
+     * 
+     * @return 系統キーを設定したノード数
+     * @throws JpaTreeException ノードエンティティが {@link LineageKeyTreeNode} を実装していない場合
+     */
+    @SuppressWarnings("unchecked")
+    public int rebuildLineageKeys() {
+
+        if (!isLineageKeyEnabled()) {
+            throw new JpaTreeException(treeNodeEntityClass.getSimpleName() + " does not implement LineageKeyTreeNode.");
+        }
+        String orderString = "select p.descendant.id, p.orderIndex from " + pathEntityName() + " p where p.depth = 0";
+        String parentString = "select p.descendant.id, p.ancestor.id from " + pathEntityName() + " p where p.depth = 1";
+        Map<Object, Integer> orderIndexes = new HashMap<>();
+        ((List<Object[]>) session.queryList(orderString, new Object[] {}))
+                .forEach(row -> orderIndexes.put(row[0], ((Number) row[1]).intValue()));
+        Map<Object, List<Object>> childIds = new HashMap<>();
+        Set<Object> nonRoots = new HashSet<>();
+        ((List<Object[]>) session.queryList(parentString, new Object[] {})).forEach(row -> {
+            childIds.computeIfAbsent(row[1], k -> new ArrayList<>()).add(row[0]);
+            nonRoots.add(row[0]);
         });
+
+        // 呼び出し側の未フラッシュの変更を、一括更新の前に DB へ反映する
+        session.flush();
+        String clearString = "update " + nodeEntityName() + " n set n.lineageKey = null";
+        session.executeUpdate(clearString, new Object[] {});
+        String updateString = "update " + nodeEntityName() + " n set n.lineageKey = ?1 where n.id = ?2";
+        Deque<Object[]> stack = new ArrayDeque<>();
+        orderIndexes.keySet().stream().filter(id -> !nonRoots.contains(id)).forEach(id -> stack.push(new Object[] { id, null }));
+        int count = 0;
+        while (!stack.isEmpty()) {
+            Object[] entry = stack.pop();
+            String key = LineageKey.child((String) entry[1], orderIndexes.get(entry[0]), (Serializable) entry[0]);
+            session.executeUpdate(updateString, new Object[] { key, entry[0] });
+            count++;
+            for (Object childId : childIds.getOrDefault(entry[0], List.of())) {
+                stack.push(new Object[] { childId, key });
+            }
+        }
+        // 一括更新した系統キーを、管理下のノードに反映する
+        syncManagedEntities(null, false, session::refresh);
+        log.info("lineage keys rebuilt: {} node(s)", count);
+        return count;
+    }
+
+    /**
+     * ノードが親ノードの ID とルートフラグを持つかどうかを返します
+     * 
+     * @return true:ノードエンティティが {@link ParentPointerTreeNode} を実装している
+     */
+    public boolean isParentPointerEnabled() {
+
+        return ParentPointerTreeNode.class.isAssignableFrom(treeNodeEntityClass);
+    }
+
+    /**
+     * {@code node} に親ノードの ID とルートフラグを設定します
+     * <p>
+     * {@code node} が永続化コンテキストに含まれない場合は UPDATE 文で更新します。
+     * 
+     * @param node     ノード
+     * @param parentId 親ノードの ID（null 可）
+     * @param treeRoot ルートフラグ
+     */
+    protected void setParentPointer(N node, @Nullable Long parentId, boolean treeRoot) {
+
+        ParentPointerTreeNode pointer = (ParentPointerTreeNode) node;
+        pointer.setParentId(parentId);
+        pointer.setTreeRoot(treeRoot);
+        if (!session.contains(node)) {
+            updateParentPointer(node, parentId, treeRoot);
+        }
+    }
+
+    /**
+     * UPDATE 文で {@code node} の親ノードの ID とルートフラグを更新します
+     * 
+     * @param node     ノード
+     * @param parentId 親ノードの ID（null 可）
+     * @param treeRoot ルートフラグ
+     */
+    private void updateParentPointer(N node, @Nullable Long parentId, boolean treeRoot) {
+
+        // DbSession は null をバインドできないため、null の場合はリテラルで更新する
+        if (parentId == null) {
+            String updateString = "update " + nodeEntityName() + " n set n.parentId = null, n.treeRoot = ?1 where n = ?2";
+            session.executeUpdate(updateString, new Object[] { treeRoot, node });
+        } else {
+            String updateString = "update " + nodeEntityName() + " n set n.parentId = ?1, n.treeRoot = ?2 where n = ?3";
+            session.executeUpdate(updateString, new Object[] { parentId, treeRoot, node });
+        }
+    }
+
+    /**
+     * 全てのノードの親ノードの ID とルートフラグを閉包テーブルから再生成します
+     * <p>
+     * 既存のツリーに親ノードの ID を導入する場合に使用します。ツリーの大きさに関わらず、発行する SQL は 3 文です。
+     * 
+     * @throws JpaTreeException ノードエンティティが {@link ParentPointerTreeNode} を実装していない場合
+     */
+    public void rebuildParentPointers() {
+
+        if (!isParentPointerEnabled()) {
+            throw new JpaTreeException(treeNodeEntityClass.getSimpleName() + " does not implement ParentPointerTreeNode.");
+        }
+        // 呼び出し側の未フラッシュの変更を、一括更新の前に DB へ反映する
         session.flush();
+        session.executeUpdate("update " + nodeEntityName() + " n set n.parentId = null, n.treeRoot = false", new Object[] {});
+        String parentString = "update " + nodeEntityName() + " n "
+                + "set n.parentId = (select p.ancestor.id from " + pathEntityName() + " p where p.descendant = n and p.depth = 1) "
+                + "where exists (select 1 from " + pathEntityName() + " p where p.descendant = n and p.depth = 1)";
+        session.executeUpdate(parentString, new Object[] {});
+        String rootString = "update " + nodeEntityName() + " n set n.treeRoot = true "
+                + "where n.parentId is null "
+                + "and exists (select 1 from " + pathEntityName() + " p where p.descendant = n and p.depth = 0)";
+        session.executeUpdate(rootString, new Object[] {});
+        markTreeWritten();
+        // 一括更新した親ノードの ID とルートフラグを、管理下のノードに反映する
+        syncManagedEntities(null, false, session::refresh);
+    }
+
+    /**
+     * ノードの ID を数値で返す
+     * 
+     * @param node ノード（null 可）
+     * @return ID（{@code node} が null の場合は null）
+     */
+    private Long idOf(@Nullable N node) {
+
+        return node == null ? null : ((Number) node.getId()).longValue();
+    }
+
+    /**
+     * {@code source} を含む子ノードのツリーを複製し、{@code newParent} の直下に追加します
+     * <p>
+     * ノードは {@link TreeNode#clone()} で複製します。
+     * 
+     * @param source    複製元ツリーの親ノード
+     * @param newParent 複製先の親ノード（null の場合はルートとして追加）
+     * @return 複製したツリーの親ノード
+     * @see #copySubtree(ClosureTableTreeNode, ClosureTableTreeNode, UnaryOperator)
+     */
+    public N copySubtree(N source, @Nullable N newParent) {
+
+        return copySubtree(source, newParent, node -> treeNodeEntityClass.cast(node.clone()));
+    }
+
+    /**
+     * {@code source} を含む子ノードのツリーを複製し、{@code newParent} の直下に追加します
+     * <p>
+     * 複製元のノードは 1 回のクエリで取得し、{@code nodeCopier} で複製したノードをまとめて登録します。
+     * ツリー内のパスは複製元の閉包テーブルの行から導出してまとめて登録し、
+     * {@code newParent} の祖先へのパスは 1 文の INSERT ... SELECT で登録します。
+     * 複製したノードの {@code orderIndex} は複製元と同じです。
+     * 
+     * @param source     複製元ツリーの親ノード
+     * @param newParent  複製先の親ノード（null の場合はルートとして追加）
+     * @param nodeCopier ノードを複製する関数（{@link TreeNode#clone()} と同様に ID を持たないノードを返すこと）
+     * @return 複製したツリーの親ノード
+     * @throws JpaTreeException source あるいは newParent のパスが未登録の場合
+     * @throws JpaTreeException 複製したノードが ID を持っている場合
+     */
+    public N copySubtree(N source, @Nullable N newParent, UnaryOperator<N> nodeCopier) {
+
+        if (source == null || !isPersistent(source) || !isPathExists(source)) {
+            throw new JpaTreeException("source should be persist.");
+        }
+        if (newParent != null && (!isPersistent(newParent) || !isPathExists(newParent))) {
+            throw new JpaTreeException("newParent should be persist.");
+        }
+
+        // 複製元ツリーのノードを複製
+        List<N> sourceNodes = getTree(source);
+        Map<Serializable, N> copies = new HashMap<>();
+        for (N node : sourceNodes) {
+            N copy = nodeCopier.apply(node);
+            if (isPersistent(copy)) {
+                throw new JpaTreeException("clone must not have id. " + copy.toString());
+            }
+            persist(copy);
+            copies.put(node.getId(), copy);
+            indexName(copy);
+        }
+
+        // 複製元ツリー内のパスから複製先のパスを導出
+        String queryString = "select p.ancestor.id, p.descendant.id, p.depth, p.orderIndex from " + pathEntityName() + " p "
+                + "where p.ancestor in (select s.descendant from " + pathEntityName() + " s where s.ancestor = ?1)";
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = (List<Object[]>) session.queryList(queryString, new Object[] { source });
+        Map<Serializable, Integer> orderIndexes = new HashMap<>();
+        Map<Serializable, Serializable> parentIds = new HashMap<>();
+        for (Object[] row : rows) {
+            P path = newTreePathInstance();
+            path.setAncestor(copies.get(row[0]));
+            path.setDescendant(copies.get(row[1]));
+            path.setDepth(((Number) row[2]).intValue());
+            path.setOrderIndex(((Number) row[3]).intValue());
+            session.persist(path);
+            if (path.getDepth() == 0) {
+                orderIndexes.put((Serializable) row[1], path.getOrderIndex());
+            } else if (path.getDepth() == 1) {
+                parentIds.put((Serializable) row[1], (Serializable) row[0]);
+            }
+        }
+
+        N copyRoot = copies.get(source.getId());
+        int rootOrderIndex = orderIndexes.get(source.getId());
+        if (isLineageKeyEnabled()) {
+            // 複製元ツリーは深さの順に並んでいるため、親の系統キーは子より先に決まる
+            Map<Serializable, String> keys = new HashMap<>();
+            String newParentKey = newParent == null ? null : getLineageKey(newParent);
+            keys.put(source.getId(), childLineageKey(newParentKey, newParent != null, rootOrderIndex, copyRoot));
+            for (N node : sourceNodes.subList(1, sourceNodes.size())) {
+                N copy = copies.get(node.getId());
+                String parentKey = keys.get(parentIds.get(node.getId()));
+                keys.put(node.getId(), childLineageKey(parentKey, true, orderIndexes.get(node.getId()), copy));
+            }
+            keys.forEach((id, key) -> setLineageKey(copies.get(id), key));
+        }
+        if (isParentPointerEnabled()) {
+            setParentPointer(copyRoot, idOf(newParent), newParent == null);
+            parentIds.forEach((id, parentId) -> setParentPointer(copies.get(id), idOf(copies.get(parentId)), false));
+        }
+        flush();
+
+        if (newParent != null) {
+            insertAncestorPaths(copyRoot, newParent, rootOrderIndex);
+        }
+        markTreeWritten();
+        log.debug("{} node(s) copied from {}", copies.size(), source.toString());
+        return copyRoot;
     }
 
     /**
@@ -592,6 +2033,11 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
                             save(p);
                             log.debug("Path saved {}", p.toString());
                         });
+                        if (isLineageKeyEnabled()) {
+                            relocateLineageKeys(node, currentParent, orderIndex);
+                            // 一括更新した系統キーを、管理下のノード（node を含む）に反映する
+                            syncManagedEntities(subtreeIds(node), false, session::refresh);
+                        }
                     }
                 } else {
                     // ROOTノードではなく新しい親が Null な場合 ＝ ルートに移動
@@ -614,6 +2060,11 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
                         save(p);
                         log.debug("Path saved {}", p.toString());
                     });
+                    if (isLineageKeyEnabled()) {
+                        relocateLineageKeys(node, null, orderIndex);
+                        // 一括更新した系統キーを、管理下のノード（node を含む）に反映する
+                        syncManagedEntities(subtreeIds(node), false, session::refresh);
+                    }
                 }
 
             }
@@ -644,9 +2095,96 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         }
         List<P> paths = getDescendantPaths(descendant);
         paths.forEach(p -> session.delete(p));
+        clearNamePathCache();
+        invalidateBreadcrumbs(descendant);
+        if (isLineageKeyEnabled()) {
+            setLineageKey(descendant, null);
+        }
+        if (isParentPointerEnabled()) {
+            setParentPointer(descendant, null, false);
+        }
+        if (isClosureMemoActive()) {
+            closureMemo().put(descendant.getId(), List.of());
+        }
         removeNode(descendant, force);
     }
 
+    /**
+     * {@code root} を含む子ノードのツリーのパスを一括で削除します
+     * <p>
+     * {@code TreePath.descendant} が {@code root} のツリーに属するパスを 1 文の DELETE で削除します。
+     * ツリーの大きさに関わらず、発行する SQL の数は一定です。
+     * <p>
+     * {@code removeNodes} が {@code true} の場合、ツリーに属するノードも一括で削除します。
+     * 
+     * @param root        削除するツリーの親ノード
+     * @param removeNodes true:ノードも削除する, false:パスのみ削除する
+     * @throws JpaTreeException root のパスが存在しない場合
+     */
+    public void deleteSubtree(N root, boolean removeNodes) {
+
+        if (root == null || !isPersistent(root) || !isPathExists(root)) {
+            throw new JpaTreeException("specified path not registered.");
+        }
+        // 呼び出し側の未フラッシュの変更を、一括更新の前に DB へ反映する
+        session.flush();
+        List<?> nodeIds = subtreeIds(root);
+        if (!removeNodes && (isLineageKeyEnabled() || isParentPointerEnabled())) {
+            // ツリーから外れるノードの系統キーと親ノードの ID を削除
+            List<String> assignments = new ArrayList<>();
+            if (isLineageKeyEnabled()) {
+                assignments.add("n.lineageKey = null");
+            }
+            if (isParentPointerEnabled()) {
+                assignments.add("n.parentId = null, n.treeRoot = false");
+            }
+            String updateString = "update " + nodeEntityName() + " n set " + String.join(", ", assignments) + " "
+                    + "where n.id in (select s.descendant.id from " + pathEntityName() + " s where s.ancestor = ?1)";
+            session.executeUpdate(updateString, new Object[] { root });
+        }
+
+        String deleteString = "delete from " + pathEntityName() + " p "
+                + "where p.descendant in (select s.descendant from " + pathEntityName() + " s where s.ancestor = ?1)";
+        session.executeUpdate(deleteString, new Object[] { root });
+
+        if (removeNodes) {
+            String nodeDeleteString = "delete from " + nodeEntityName() + " n where n.id in ?1";
+            for (List<?> ids : chunk(nodeIds)) {
+                session.executeUpdate(nodeDeleteString, new Object[] { ids });
+            }
+            nodeIds.forEach(id -> unindexName((Serializable) id));
+            log.info("subtree removed {}: {} node(s)", root.toString(), nodeIds.size());
+        }
+
+        clearNamePathCache();
+        invalidateClosureMemo();
+        invalidateBreadcrumbs(root);
+
+        // 一括削除したパスとノードのみ永続化コンテキストから切り離す
+        Consumer<Object> nodeAction = null;
+        if (removeNodes) {
+            nodeAction = session::detach;
+        } else if (isLineageKeyEnabled() || isParentPointerEnabled()) {
+            nodeAction = session::refresh;
+        }
+        syncManagedEntities(nodeIds, true, nodeAction);
+    }
+
+    /**
+     * {@code list} を {@link #IN_CLAUSE_CHUNK_SIZE} 件ごとに分割します
+     * 
+     * @param list 分割するリスト
+     * @return 分割したリストのリスト
+     */
+    protected static <T> List<List<T>> chunk(List<T> list) {
+
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+            chunks.add(list.subList(i, Math.min(i + IN_CLAUSE_CHUNK_SIZE, list.size())));
+        }
+        return chunks;
+    }
+
     /** {@inheritDoc} */
     @Override
     public P findTreePath(P treePath) {
@@ -675,17 +2213,161 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     @Override
     public long countPaths(N node) {
 
-        List<P> paths = getDescendantPaths(node);
-        return paths != null ? paths.size() : 0;
+        if (isClosureMemoActive()) {
+            return ancestorIds(node).size();
+        }
+        String queryString = "select count(p) from " + pathEntityName() + " p where p.descendant = ?1";
+        return session.queryCount(queryString, new Object[] { node });
     }
 
+    /**
+     * 深さが {@code level} 以上のノードの情報を返す
+     * <p>
+     * 深さの条件は HAVING 句で、並べ替えはデータベースで行います。
+     * 
+     * @param level 最小の深さ（ルートノードの深さを 1 とする）
+     * @return ノード情報のコレクション
+     */
     public List<ClosureTableTreeNodeInfo> getClosureTableTreeNodeInfo(int level) {
 
         if (level < 1) {
             throw new IllegalArgumentException("level should be lager than 0");
         }
-        return getClosureTableTreeNodeInfo().stream().filter(info -> info.getDepth() >= level)
-                .collect(Collectors.toList());
+        return getTransFomrmed(nodeInfoQuery(level, Integer.MAX_VALUE), false);
+    }
+
+    /**
+     * 深さが {@code minLevel} 以上 {@code maxLevel} 以下のノードの情報を、ノード ID の順で 1 ページ分返す
+     * <p>
+     * {@code offset} 件目から {@code pageSize} 件を返します。
+     * 読み飛ばす行はノードの主キーの索引と深さの判定のみで、集計は返すページのノードのみで行いますが、
+     * 後方のページほど読み飛ばす行が増えるため、大きなツリーでは
+     * {@link #getClosureTableTreeNodeInfoPage(int, int, Serializable, int)} を使用してください。
+     * 
+     * @param minLevel 最小の深さ（ルートノードの深さを 1 とする）
+     * @param maxLevel 最大の深さ
+     * @param offset   読み飛ばす件数
+     * @param pageSize 1 ページの件数
+     * @return ノード情報のコレクション（ノード ID の順）
+     */
+    public List<ClosureTableTreeNodeInfo> getClosureTableTreeNodeInfoPage(int minLevel, int maxLevel, int offset, int pageSize) {
+
+        Query query = pageIdQuery(minLevel, maxLevel, null);
+        query.setFirstResult(offset);
+        query.setMaxResults(pageSize);
+        return pageNodeInfo(query);
+    }
+
+    /**
+     * 深さが {@code minLevel} 以上 {@code maxLevel} 以下のノードの情報を、ノード ID の順で 1 ページ分返す
+     * <p>
+     * ID が {@code afterId} より大きいノードを {@code pageSize} 件返します。
+     * 次のページを取得する場合は、返されたページの最後の要素のノード ID を指定してください。
+     * ノードの主キーの索引で {@code afterId} の位置から読み始め、深さはパスの {@code (descendant, depth)} の索引で
+     * 判定するため、前のページの行を読み直すことはありません。{@code treePaths} などの集計は、
+     * 返すページのノードのみで行います。
+     * 
+     * @param minLevel 最小の深さ（ルートノードの深さを 1 とする）
+     * @param maxLevel 最大の深さ
+     * @param afterId  前のページの最後のノード ID（null の場合は先頭から）
+     * @param pageSize 1 ページの件数
+     * @return ノード情報のコレクション（ノード ID の順）
+     */
+    public List<ClosureTableTreeNodeInfo> getClosureTableTreeNodeInfoPage(int minLevel, int maxLevel,
+            @Nullable Serializable afterId, int pageSize) {
+
+        Query query = pageIdQuery(minLevel, maxLevel, afterId);
+        query.setMaxResults(pageSize);
+        return pageNodeInfo(query);
+    }
+
+    /**
+     * 深さの条件と並べ替えを SQL で行うノード情報のクエリを返す
+     */
+    private Query nodeInfoQuery(int minLevel, int maxLevel) {
+
+        checkLevelRange(minLevel, maxLevel);
+        List<Object> params = new ArrayList<>();
+        params.add((long) minLevel);
+        String having = "having count(p_1) >= ?1 ";
+        if (maxLevel < Integer.MAX_VALUE) {
+            params.add((long) maxLevel);
+            having += "and count(p_1) <= ?" + params.size() + " ";
+        }
+        String queryString = "select p_1.descendant, "
+                + TREE_PATHS_EXPRESSION + " treePaths, "
+                + PATH_SEQ_EXPRESSION + ", "
+                + "count(p_1) depth, "
+                + "max(p_1.orderIndex) orderIndex "
+                + "from " + pathEntityName() + " p_1 "
+                + "group by p_1.descendant "
+                + having
+                + "order by treePaths";
+        Query query = session.getEntityManager().createQuery(queryString);
+        for (int i = 0; i < params.size(); i++) {
+            query.setParameter(i + 1, params.get(i));
+        }
+        return query;
+    }
+
+    /**
+     * 深さが {@code minLevel} 以上 {@code maxLevel} 以下のノードの ID を、ID の順に返すクエリを返す
+     * <p>
+     * 深さ {@code minLevel} のノードは深さ {@code minLevel - 1} のパスを持ち、深さ {@code maxLevel} のパスを持ちません。
+     * 集計を行わず、ノードごとにパスの {@code (descendant, depth)} の索引を参照するのみで判定します。
+     */
+    private Query pageIdQuery(int minLevel, int maxLevel, @Nullable Serializable afterId) {
+
+        checkLevelRange(minLevel, maxLevel);
+        List<Object> params = new ArrayList<>();
+        params.add(minLevel - 1);
+        String where = "where exists (select 1 from " + pathEntityName() + " q where q.descendant = n and q.depth = ?1) ";
+        if (maxLevel < Integer.MAX_VALUE) {
+            params.add(maxLevel);
+            where += "and not exists (select 1 from " + pathEntityName() + " q where q.descendant = n and q.depth = ?"
+                    + params.size() + ") ";
+        }
+        if (afterId != null) {
+            params.add(afterId);
+            where += "and n.id > ?" + params.size() + " ";
+        }
+        String queryString = "select n.id from " + nodeEntityName() + " n " + where + "order by n.id";
+        Query query = session.getEntityManager().createQuery(queryString);
+        for (int i = 0; i < params.size(); i++) {
+            query.setParameter(i + 1, params.get(i));
+        }
+        return query;
+    }
+
+    /**
+     * {@code idQuery} が返すノードの情報を、ノード ID の順に返す
+     * 
+     * @param idQuery 1 ページ分のノード ID を返すクエリ
+     * @return ノード情報のコレクション
+     */
+    private List<ClosureTableTreeNodeInfo> pageNodeInfo(Query idQuery) {
+
+        List<?> ids = idQuery.getResultList();
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String queryString = "select p_1.descendant, "
+                + TREE_PATHS_EXPRESSION + ", "
+                + PATH_SEQ_EXPRESSION + ", "
+                + "count(p_1) depth, "
+                + "max(p_1.orderIndex) orderIndex "
+                + "from " + pathEntityName() + " p_1 "
+                + "where p_1.descendant.id in ?1 "
+                + "group by p_1.descendant "
+                + "order by p_1.descendant.id";
+        return getTransFomrmed(session.getEntityManager().createQuery(queryString).setParameter(1, ids), false);
+    }
+
+    private static void checkLevelRange(int minLevel, int maxLevel) {
+
+        if (minLevel < 1 || maxLevel < minLevel) {
+            throw new IllegalArgumentException("invalid level range: " + minLevel + " - " + maxLevel);
+        }
     }
 
     /**
@@ -695,8 +2377,8 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
     public List<ClosureTableTreeNodeInfo> getClosureTableTreeNodeInfo() {
 
         String queryString = "select p_1.descendant, "
-                + "listagg( substr( concat( '000000', str( p_1.ancestor ) ), length( concat( '000000', str( p_1.ancestor ) ) ) - 5 ), '-' ) within  group ( order by p_1.depth desc ), "
-                + "listagg( str(p_1.ancestor), ',' ) within  group ( order by p_1.depth desc ), "
+                + TREE_PATHS_EXPRESSION + ", "
+                + PATH_SEQ_EXPRESSION + ", "
                 + "count(p_1) depth, "
                 + "max(p_1.orderIndex) orderIndex "
                 + "from " + pathEntityName() + " p_1 "
@@ -706,32 +2388,56 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
 
     /**
      * 複数のノードのそれぞれを親とした場合の子ノードツリーを取得する
+     * <p>
+     * 指定されたノードを祖先に持つパスを結合した 1 回のクエリで取得します。
+     * 指定されたノードが多い場合は {@link #IN_CLAUSE_CHUNK_SIZE} 件ごとに分割して取得します。
+     * 各ノードの深さは、そのノードの最も近い祖先となる指定ノードを 1 とした深さです。
      * 
-     * @param havingNodes
-     * @return
+     * @param havingNodes 親ノードのコレクション
+     * @return ノード情報のコレクション（{@code treePaths} の順）
      */
     public List<ClosureTableTreeNodeInfo> getClosureTableTreeNodeInfo(List<N> havingNodes) {
 
         if (havingNodes == null || havingNodes.isEmpty()) {
             return null;
         }
-        List<N> treeNodes = havingNodes.stream().map(this::getTree).flatMap(Collection::stream)
-                .collect(Collectors.toList());
         String queryString = "select p_1.descendant, "
-                + "listagg( substr( concat( '000000', str( p_1.ancestor ) ), length( concat( '000000', str( p_1.ancestor ) ) ) - 5 ), '-' ) within  group ( order by p_1.depth desc ), "
-                + "listagg( str(p_1.ancestor), ',' ) within  group ( order by p_1.depth desc ), "
+                + TREE_PATHS_EXPRESSION + ", "
+                + PATH_SEQ_EXPRESSION + ", "
                 + "count(p_1) depth, "
                 + "max(p_1.orderIndex) orderIndex "
                 + "from " + pathEntityName() + " p_1 "
-                + "where p_1.descendant in(?1) "
+                + "where p_1.descendant in (select r.descendant from " + pathEntityName() + " r where r.ancestor in ?1) "
                 + "group by p_1.descendant";
-        List<ClosureTableTreeNodeInfo> resultList = getTransFomrmed(
-                session.getEntityManager().createQuery(queryString).setParameter(1, treeNodes));
-        long d = resultList.get(0).getDepth() - 1L;
-        return resultList.stream().map(n -> {
-            n.setDepth(n.getDepth() - d);
-            return n;
-        }).collect(Collectors.toList());
+        Set<String> rootIds = havingNodes.stream().map(n -> String.valueOf(n.getId())).collect(Collectors.toSet());
+        Map<Serializable, ClosureTableTreeNodeInfo> infoMap = new HashMap<>();
+        for (List<N> nodes : chunk(havingNodes)) {
+            Query query = session.getEntityManager().createQuery(queryString).setParameter(1, nodes);
+            for (ClosureTableTreeNodeInfo info : getTransFomrmed(query, false)) {
+                info.setDepth(relativeDepth(info, rootIds));
+                infoMap.merge(info.getDescendant().getId(), info, (a, b) -> a.getDepth() <= b.getDepth() ? a : b);
+            }
+        }
+        return infoMap.values().stream().sorted(Comparator.comparing(ClosureTableTreeNodeInfo::getTreePaths))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@code rootIds} のうち最も近い祖先を 1 とした {@code info} の深さを返す
+     * 
+     * @param info    ノード情報
+     * @param rootIds 親ノードの ID
+     * @return 深さ
+     */
+    private long relativeDepth(ClosureTableTreeNodeInfo info, Set<String> rootIds) {
+
+        String[] pathSeq = info.getPathSeq().split(",");
+        for (int i = pathSeq.length - 1; i >= 0; i--) {
+            if (rootIds.contains(pathSeq[i].trim())) {
+                return pathSeq.length - i;
+            }
+        }
+        return info.getDepth();
     }
 
     /**
@@ -741,6 +2447,17 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
      */
     protected List<ClosureTableTreeNodeInfo> getTransFomrmed(Query query) {
 
+        return getTransFomrmed(query, true);
+    }
+
+    /**
+     * 
+     * @param query
+     * @param sort true:{@code treePaths} の順にメモリ上で並べ替える, false:クエリの順のまま返す
+     * @return
+     */
+    protected List<ClosureTableTreeNodeInfo> getTransFomrmed(Query query, boolean sort) {
+
         @SuppressWarnings("unchecked")
         List<ClosureTableTreeNodeInfo> pathDepths = query.unwrap(org.hibernate.query.Query.class)
                 .setTupleTransformer((tuple, aliases) -> {
@@ -751,6 +2468,9 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
                             (long) tuple[3],
                             (int) tuple[4]);
                 }).getResultList();
+        if (!sort) {
+            return pathDepths;
+        }
         return pathDepths.stream().sorted(Comparator.comparing(ClosureTableTreeNodeInfo::getTreePaths))
                 .collect(Collectors.toList());
     }
@@ -834,40 +2554,161 @@ public class ClosureTableTreeDao<N extends ClosureTableTreeNode, P extends TreeP
         return string.getBytes(charset).length;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * ルートノードの取得と、全ての {@code depth = 1} のパスの取得の 2 回のクエリで組み立てます。
+     */
     @Override
     public List<NestedTreeNode<N>> getNestedTreeNodeList() {
         List<N> rootNodes = getRootNodes();
         if (CollectionUtils.isEmpty(rootNodes)) {
             return null;
         }
-        return getNestedTreeNodeList(rootNodes);
+        String queryString = "select c.ancestor.id, c.descendant from " + pathEntityName() + " c "
+                + "where c.depth = 1 "
+                + "order by c.orderIndex";
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = (List<Object[]>) session.queryList(queryString, null);
+        return assembleNest(rootNodes, rows, Integer.MAX_VALUE);
     }
 
+    /** {@inheritDoc} */
     @Override
     public List<NestedTreeNode<N>> getNestedTreeNodeList(List<N> nodes) {
-        List<NestedTreeNode<N>> nestedNodes = nodes.stream().map(node -> new NestedTreeNode<>(node)).collect(Collectors.toList());
-        for (NestedTreeNode<N> nestedNode : nestedNodes) {
-            getNest(nestedNode);
-        }
-        return nestedNodes;
+        return getNestedTreeNodeList(nodes, Integer.MAX_VALUE);
     }
 
+    /** {@inheritDoc} */
     @Override
     public NestedTreeNode<N> getNestedTreeNodeList(N node) {
-        NestedTreeNode<N> nested = new NestedTreeNode<>(node);
-        getNest(nested);
-        return nested;
+        return getNestedTreeNodeList(node, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@code node} を親とする {@code maxDepth} 階層までの子ノードを NestedTreeNode で返す
+     * 
+     * @param node     親ノード
+     * @param maxDepth {@code node} からの最大の深さ（0 の場合は {@code node} のみ）
+     * @return NestedTreeNode
+     */
+    public NestedTreeNode<N> getNestedTreeNodeList(N node, int maxDepth) {
+        return getNestedTreeNodeList(List.of(node), maxDepth).get(0);
+    }
+
+    /**
+     * {@code nodes} のそれぞれを親とする {@code maxDepth} 階層までの子ノードを NestedTreeNode で返す
+     * <p>
+     * 各ノードのツリーの {@code depth = 1} のパスを 1 回のクエリ（{@code nodes} が多い場合は分割）で取得し、
+     * ID をキーとしたマップを使ってメモリ上で組み立てます。再帰呼び出しは行いません。
+     * 
+     * @param nodes    親ノードのコレクション
+     * @param maxDepth 各親ノードからの最大の深さ（0 の場合は親ノードのみ）
+     * @return NestedTreeNode のコレクション
+     */
+    public List<NestedTreeNode<N>> getNestedTreeNodeList(List<N> nodes, int maxDepth) {
+
+        if (nodes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object[]> rows = new ArrayList<>();
+        if (maxDepth > 0) {
+            boolean bounded = maxDepth < Integer.MAX_VALUE;
+            String queryString = "select distinct c.ancestor.id, c.descendant, c.orderIndex from "
+                    + pathEntityName() + " s, " + pathEntityName() + " c "
+                    + "where s.ancestor in ?1 and s.depth > 0 "
+                    + (bounded ? "and s.depth <= ?2 " : "")
+                    + "and c.descendant = s.descendant and c.depth = 1 "
+                    + "order by c.orderIndex";
+            // 分割したクエリの間では distinct が効かないため、(親 ID, 子 ID) で重複を除く
+            Map<List<Object>, Object[]> distinctRows = new LinkedHashMap<>();
+            for (List<N> chunk : chunk(nodes)) {
+                Object[] params = bounded ? new Object[] { chunk, maxDepth } : new Object[] { chunk };
+                @SuppressWarnings("unchecked")
+                List<Object[]> chunkRows = (List<Object[]>) session.queryList(queryString, params);
+                for (Object[] row : chunkRows) {
+                    distinctRows.putIfAbsent(List.of(row[0], treeNodeEntityClass.cast(row[1]).getId()), row);
+                }
+            }
+            rows.addAll(distinctRows.values());
+            rows.sort(Comparator.comparingInt(row -> ((Number) row[2]).intValue()));
+        }
+        return assembleNest(nodes, rows, maxDepth);
     }
 
-    private void getNest(NestedTreeNode<N> nestedNode) {
-        N node = nestedNode.getNode();
-        List<N> nodeChildren = getChildren(node);
-        if (!CollectionUtils.isEmpty(nodeChildren)) {
-            for (N n : nodeChildren) {
-                NestedTreeNode<N> nn = new NestedTreeNode<>(n);
-                getNest(nn);
-                nestedNode.getChildren().add(nn);
+    /**
+     * {@code node} を表示するために展開するツリーを NestedTreeNode で返す
+     * <p>
+     * {@code node} のルートを頂点に、{@code node} の各祖先ノードの直下の子ノード（各階層の兄弟ノード）を含みます。
+     * {@code node} 自身の子ノードは含みません。
+     * {@code node} の祖先パスと、各祖先ノードの {@code depth = 1} のパスを結合した 1 回のクエリで取得します。
+     * 
+     * @param node 表示するノード
+     * @return ルートノードの NestedTreeNode
+     * @throws JpaTreeException {@code node} のパスが存在しない場合
+     */
+    @SuppressWarnings("unchecked")
+    public NestedTreeNode<N> getRevealView(N node) {
+
+        String queryString = "select a.ancestor.id, c.descendant, a.ancestor "
+                + "from " + pathEntityName() + " a, " + pathEntityName() + " c "
+                + "where a.descendant = ?1 and a.depth > 0 "
+                + "and c.ancestor = a.ancestor and c.depth = 1 "
+                + "order by a.depth desc, c.orderIndex asc";
+        List<Object[]> rows = (List<Object[]>) session.queryList(queryString, new Object[] { node });
+        if (rows.isEmpty()) {
+            if (!isPathExists(node)) {
+                throw new JpaTreeException("specified path not registered.");
+            }
+            return new NestedTreeNode<>(node);
+        }
+        N root = treeNodeEntityClass.cast(rows.get(0)[2]);
+        return assembleNest(List.of(root), rows, Integer.MAX_VALUE).get(0);
+    }
+
+    /**
+     * 親ノードの ID と子ノードの組から NestedTreeNode を組み立てる
+     * <p>
+     * 行数が {@link #PARALLEL_ASSEMBLY_THRESHOLD} 以上の場合は、子ノードのグループ化と
+     * 各親ノードのツリーの組み立てを並列に行います。
+     * 
+     * @param nodes    親ノードのコレクション
+     * @param rows     {@code [親ノードの ID, 子ノード]} の行（{@code orderIndex} の順）
+     * @param maxDepth 各親ノードからの最大の深さ
+     * @return NestedTreeNode のコレクション
+     */
+    private List<NestedTreeNode<N>> assembleNest(List<N> nodes, List<Object[]> rows, int maxDepth) {
+
+        boolean parallel = rows.size() >= PARALLEL_ASSEMBLY_THRESHOLD;
+        Stream<Object[]> rowStream = parallel ? rows.parallelStream() : rows.stream();
+        Map<Object, List<N>> childrenMap = rowStream.collect(Collectors.groupingBy(
+                row -> row[0],
+                Collectors.mapping(row -> treeNodeEntityClass.cast(row[1]), Collectors.toList())));
+        Stream<N> nodeStream = parallel ? nodes.parallelStream() : nodes.stream();
+        return nodeStream.map(node -> assembleNest(node, childrenMap, maxDepth)).collect(Collectors.toList());
+    }
+
+    private NestedTreeNode<N> assembleNest(N node, Map<Object, List<N>> childrenMap, int maxDepth) {
+
+        NestedTreeNode<N> root = new NestedTreeNode<>(node);
+        Deque<NestedTreeNode<N>> nestStack = new ArrayDeque<>();
+        Deque<Integer> depthStack = new ArrayDeque<>();
+        nestStack.push(root);
+        depthStack.push(0);
+        while (!nestStack.isEmpty()) {
+            NestedTreeNode<N> nested = nestStack.pop();
+            int depth = depthStack.pop();
+            List<N> children = childrenMap.get(nested.getNode().getId());
+            if (depth >= maxDepth || children == null) {
+                continue;
+            }
+            for (N child : children) {
+                NestedTreeNode<N> nn = new NestedTreeNode<>(child);
+                nested.getChildren().add(nn);
+                nestStack.push(nn);
+                depthStack.push(depth + 1);
             }
         }
+        return root;
     }
 }
@@ -0,0 +1,370 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.roughandcheap.tinyclosuretabledao.commons.DbSession;
+import com.roughandcheap.tinyclosuretabledao.jpatree.JpaTreeException;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * 隣接リスト {@code (id, parentId, orderIndex)} から閉包テーブルを一括登録するローダー
+ * <p>
+ * レコードは深さ優先の順（親が子より先、兄弟のツリーが連続する順）で与える必要があります。
+ * 祖先ノードは深さごとのスタックで保持し、閉包テーブルのパスはメモリ上で生成します。
+ * ノードとパスは {@code chunkSize} 件ごとにフラッシュし、永続化コンテキストをクリアするため、
+ * 使用するメモリはツリーの深さと {@code chunkSize} にのみ依存します。
+ * ノードが {@link LineageKeyTreeNode} を実装している場合は、系統キーも祖先スタックから生成します。
+ * {@link ParentPointerTreeNode} を実装している場合は、親ノードの ID とルートフラグも設定します。
+ * <p>
+ * チャンクごとに {@link Checkpoint} を通知します。チェックポイントから再開する場合は、
+ * {@link #skipLoaded(Iterator, Checkpoint)} で登録済みのレコードを読み飛ばしてから
+ * {@link #load(Iterator, Checkpoint, long)} を呼び出してください。
+ *
+ * @param <N> ノードエンティティ
+ * @param <P> パスエンティティ
+ * @author Zatsurendo
+ */
+public class ClosureTableTreeLoader<N extends ClosureTableTreeNode, P extends TreePath<N>> {
+
+    private static final Logger log = LoggerFactory.getLogger(ClosureTableTreeLoader.class);
+
+    /** 登録先の DAO */
+    private final ClosureTableTreeDao<N, P> dao;
+    /** レコードからノードを生成する関数 */
+    private final Function<AdjacencyRecord, N> nodeFactory;
+    /** DbSession インスタンス */
+    private final DbSession session;
+    /** フラッシュするレコード数 */
+    private int chunkSize = 10000;
+    /** チェックポイントの通知先 */
+    private Consumer<Checkpoint> checkpointListener = checkpoint -> {};
+
+    /**
+     * コンストラクタ
+     *
+     * @param dao         登録先の DAO
+     * @param nodeFactory レコードからノードを生成する関数（永続化済みのノードを返した場合はノードの登録を行わない）
+     */
+    public ClosureTableTreeLoader(ClosureTableTreeDao<N, P> dao, Function<AdjacencyRecord, N> nodeFactory) {
+        this.dao = dao;
+        this.nodeFactory = nodeFactory;
+        this.session = dao.getSession();
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize should be lager than 0");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public void setCheckpointListener(Consumer<Checkpoint> checkpointListener) {
+        this.checkpointListener = checkpointListener;
+    }
+
+    /**
+     * {@code records} の全てのレコードを登録します
+     *
+     * @param records 深さ優先の順に並んだレコード
+     * @return 最後のチェックポイント
+     */
+    public Checkpoint load(Iterator<AdjacencyRecord> records) {
+
+        return load(records, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * {@code records} のレコードを最大 {@code maxRecords} 件登録します
+     * <p>
+     * {@code records} は {@code resumeFrom} の次のレコードを指している必要があります。
+     * チャンクごとにトランザクションを分ける場合は、返されたチェックポイントを次の呼び出しに渡してください。
+     *
+     * @param records    深さ優先の順に並んだレコード
+     * @param resumeFrom 再開するチェックポイント（null の場合は最初から）
+     * @param maxRecords 登録する最大レコード数
+     * @return 最後のチェックポイント
+     * @throws JpaTreeException 親レコードが祖先スタックに存在しない場合
+     */
+    public Checkpoint load(Iterator<AdjacencyRecord> records, @Nullable Checkpoint resumeFrom, long maxRecords) {
+
+        List<Long> idStack = new ArrayList<>();
+        List<N> nodeStack = new ArrayList<>();
+        List<String> keyStack = new ArrayList<>();
+        long recordCount = 0;
+        long pathCount = 0;
+        if (resumeFrom != null) {
+            idStack.addAll(resumeFrom.idStack());
+            resumeFrom.nodeIdStack().forEach(id -> nodeStack.add(reference(id)));
+            if (dao.isLineageKeyEnabled()) {
+                nodeStack.forEach(node -> keyStack.add(dao.getLineageKey(node)));
+            }
+            recordCount = resumeFrom.records();
+            pathCount = resumeFrom.paths();
+        }
+
+        long startTime = System.nanoTime();
+        long loaded = 0;
+        long pathsLoaded = 0;
+        int inChunk = 0;
+        Checkpoint checkpoint = new Checkpoint(recordCount, pathCount, List.copyOf(idStack), nodeIds(nodeStack), 0);
+        while (loaded < maxRecords && records.hasNext()) {
+            AdjacencyRecord record = records.next();
+            // 親レコードまで祖先スタックを戻す
+            while (!idStack.isEmpty()
+                    && (record.parentId() == null || idStack.get(idStack.size() - 1).longValue() != record.parentId().longValue())) {
+                idStack.remove(idStack.size() - 1);
+                nodeStack.remove(nodeStack.size() - 1);
+                if (!keyStack.isEmpty()) {
+                    keyStack.remove(keyStack.size() - 1);
+                }
+            }
+            if (record.parentId() != null && idStack.isEmpty()) {
+                throw new JpaTreeException("parent of record " + record.id()
+                        + " not found. records must be in depth-first order.");
+            }
+
+            N node = nodeFactory.apply(record);
+            if (!dao.isPersistent(node)) {
+                session.persist(node);
+            }
+            int depth = nodeStack.size();
+            for (int i = 0; i < depth; i++) {
+                persistPath(nodeStack.get(i), node, depth - i, record.orderIndex());
+            }
+            persistPath(node, node, 0, record.orderIndex());
+            if (dao.isParentPointerEnabled()) {
+                N parent = depth == 0 ? null : nodeStack.get(depth - 1);
+                dao.setParentPointer(node, parent == null ? null : ((Number) parent.getId()).longValue(), parent == null);
+            }
+            if (dao.isLineageKeyEnabled()) {
+                String parentKey = keyStack.isEmpty() ? null : keyStack.get(keyStack.size() - 1);
+                String key = LineageKey.child(parentKey, record.orderIndex(), node.getId());
+                dao.setLineageKey(node, key);
+                keyStack.add(key);
+            }
+            pathsLoaded += depth + 1;
+            idStack.add(record.id());
+            nodeStack.add(node);
+            loaded++;
+
+            if (++inChunk >= chunkSize) {
+                flushChunk(nodeStack);
+                checkpoint = new Checkpoint(recordCount + loaded, pathCount + pathsLoaded, List.copyOf(idStack),
+                        nodeIds(nodeStack), rowsPerSecond(loaded + pathsLoaded, startTime));
+                report(checkpoint);
+                inChunk = 0;
+            }
+        }
+        if (inChunk > 0) {
+            flushChunk(nodeStack);
+            checkpoint = new Checkpoint(recordCount + loaded, pathCount + pathsLoaded, List.copyOf(idStack),
+                    nodeIds(nodeStack), rowsPerSecond(loaded + pathsLoaded, startTime));
+            report(checkpoint);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * 先頭から読み直す {@code records} について、{@code checkpoint} までに登録済みのレコードを読み飛ばします
+     *
+     * @param records    先頭から読み直したレコード
+     * @param checkpoint 再開するチェックポイント
+     * @return 読み飛ばした後の {@code records}
+     */
+    public static Iterator<AdjacencyRecord> skipLoaded(Iterator<AdjacencyRecord> records, Checkpoint checkpoint) {
+
+        for (long i = 0; i < checkpoint.records() && records.hasNext(); i++) {
+            records.next();
+        }
+        return records;
+    }
+
+    /**
+     * CSV からレコードを読み込む Iterator を返します
+     * <p>
+     * 各行は {@code id,parentId,orderIndex[,nodeName]} の形式で、{@code parentId} が空の行はルートとして扱います。
+     * 空行と、先頭の項目が数値でない行（ヘッダ行）は読み飛ばします。
+     *
+     * @param reader CSV の Reader
+     * @return レコードの Iterator
+     */
+    public static Iterator<AdjacencyRecord> csvRecords(BufferedReader reader) {
+
+        return new Iterator<AdjacencyRecord>() {
+
+            private AdjacencyRecord next = read();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public AdjacencyRecord next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                AdjacencyRecord current = next;
+                next = read();
+                return current;
+            }
+
+            private AdjacencyRecord read() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] columns = line.split(",", 4);
+                        if (line.isBlank() || columns.length < 3 || !columns[0].trim().matches("-?\\d+")) {
+                            continue;
+                        }
+                        String parentId = columns[1].trim();
+                        return new AdjacencyRecord(
+                                Long.parseLong(columns[0].trim()),
+                                parentId.isEmpty() ? null : Long.valueOf(parentId),
+                                Integer.parseInt(columns[2].trim()),
+                                columns.length > 3 ? columns[3] : null);
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * JDBC の ResultSet からレコードを読み込む Iterator を返します
+     * <p>
+     * 1 列目を id、2 列目を parentId（NULL の場合はルート）、3 列目を orderIndex、
+     * 4 列目が存在する場合は nodeName として読み込みます。
+     * ResultSet のフェッチサイズは呼び出し側で設定してください。
+     *
+     * @param resultSet ResultSet
+     * @return レコードの Iterator
+     */
+    public static Iterator<AdjacencyRecord> resultSetRecords(ResultSet resultSet) {
+
+        return new Iterator<AdjacencyRecord>() {
+
+            private Boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (hasNext == null) {
+                        hasNext = resultSet.next();
+                    }
+                    return hasNext;
+                } catch (SQLException e) {
+                    throw new JpaTreeException(e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public AdjacencyRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasNext = null;
+                try {
+                    long parentId = resultSet.getLong(2);
+                    Long parent = resultSet.wasNull() ? null : parentId;
+                    String nodeName = resultSet.getMetaData().getColumnCount() > 3 ? resultSet.getString(4) : null;
+                    return new AdjacencyRecord(resultSet.getLong(1), parent, resultSet.getInt(3), nodeName);
+                } catch (SQLException e) {
+                    throw new JpaTreeException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    private void persistPath(N ancestor, N descendant, int depth, int orderIndex) {
+
+        P path = dao.newTreePathInstance();
+        path.setAncestor(ancestor);
+        path.setDescendant(descendant);
+        path.setDepth(depth);
+        path.setOrderIndex(orderIndex);
+        session.persist(path);
+    }
+
+    /**
+     * フラッシュして永続化コンテキストをクリアし、祖先スタックのノードを参照に置き換える
+     */
+    private void flushChunk(List<N> nodeStack) {
+
+        session.flush();
+        session.clear();
+        dao.invalidateClosureMemo();
+        dao.markTreeWritten();
+        nodeStack.replaceAll(node -> reference(node.getId()));
+    }
+
+    private N reference(Serializable id) {
+
+        return dao.treeNodeEntityClass.cast(session.getEntityManager().getReference(dao.treeNodeEntityClass, id));
+    }
+
+    private List<Serializable> nodeIds(List<N> nodeStack) {
+
+        List<Serializable> ids = new ArrayList<>();
+        nodeStack.forEach(node -> ids.add(node.getId()));
+        return ids;
+    }
+
+    private double rowsPerSecond(long rows, long startTime) {
+
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000d;
+        return seconds > 0 ? rows / seconds : rows;
+    }
+
+    private void report(Checkpoint checkpoint) {
+
+        log.info("loaded {} node(s), {} path(s) ({} rows/sec)",
+                checkpoint.records(), checkpoint.paths(), String.format("%.1f", checkpoint.rowsPerSecond()));
+        checkpointListener.accept(checkpoint);
+    }
+
+    /**
+     * 隣接リストの 1 レコード
+     *
+     * @param id         レコードの ID
+     * @param parentId   親レコードの ID（ルートの場合は null）
+     * @param orderIndex 並び順
+     * @param nodeName   ノード名（任意）
+     */
+    public record AdjacencyRecord(long id, @Nullable Long parentId, int orderIndex, @Nullable String nodeName) {
+    }
+
+    /**
+     * 登録の進捗
+     *
+     * @param records       登録済みのレコード数
+     * @param paths         登録済みのパス数
+     * @param idStack       祖先スタックのレコード ID
+     * @param nodeIdStack   祖先スタックのノード ID
+     * @param rowsPerSecond 今回の呼び出しでの 1 秒あたりの登録行数（ノードとパスの合計）
+     */
+    public record Checkpoint(long records, long paths, List<Long> idStack, List<Serializable> nodeIdStack,
+            double rowsPerSecond) implements Serializable {
+    }
+}
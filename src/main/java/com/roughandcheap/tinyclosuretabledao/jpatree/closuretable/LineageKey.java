@@ -0,0 +1,83 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.io.Serializable;
+
+import com.roughandcheap.tinyclosuretabledao.jpatree.JpaTreeException;
+
+/**
+ * 系統キーのエンコード
+ * <p>
+ * 系統キーは、ルートからノードまでの各階層の {@code (orderIndex, id)} を連結した文字列です。
+ * 各値は桁数を表す 1 文字と、先頭のゼロを除いた 16 進数で表します（負の値は {@code '0'} と固定長の 16 進数）。
+ * この表現は順序を保存し、かつ接頭辞の重複がないため、系統キーを文字列（バイト列）として比較すると
+ * 表示順（親が先、兄弟は {@code orderIndex}、{@code id} の順）と一致します。
+ * また、ノードの系統キーは子孫ノードの系統キーの接頭辞になります。
+ * <p>
+ * キーには {@code [0-9a-g]} の ASCII 文字のみを使用します。
+ * 
+ * @author Zatsurendo
+ */
+public final class LineageKey {
+
+    /** 桁数を表す文字（1 桁から 16 桁） */
+    private static final String LENGTH_CHARS = "123456789abcdefg";
+    /** 負の値を表す文字 */
+    private static final char NEGATIVE_CHAR = '0';
+    /** 全ての系統キーより大きい文字 */
+    private static final char UPPER_BOUND_CHAR = '~';
+
+    private LineageKey() {
+    }
+
+    /**
+     * 親ノードの系統キーに、子ノードの階層を追加した系統キーを返す
+     * 
+     * @param parentKey  親ノードの系統キー（ルートの場合は null）
+     * @param orderIndex 子ノードの並び順
+     * @param id         子ノードの ID
+     * @return 子ノードの系統キー
+     */
+    public static String child(String parentKey, int orderIndex, Serializable id) {
+
+        return (parentKey == null ? "" : parentKey) + segment(orderIndex, id);
+    }
+
+    /**
+     * 1 階層分の系統キーを返す
+     * 
+     * @param orderIndex 並び順
+     * @param id         ノードの ID
+     * @return 1 階層分の系統キー
+     */
+    public static String segment(int orderIndex, Serializable id) {
+
+        if (!(id instanceof Number)) {
+            throw new JpaTreeException("lineage key requires numeric id. " + id);
+        }
+        return encode(orderIndex, 8) + encode(((Number) id).longValue(), 16);
+    }
+
+    /**
+     * {@code key} を接頭辞に持つ全ての系統キーより大きい文字列を返す
+     * <p>
+     * {@code key <= lineageKey < upperBound(key)} の範囲が、{@code key} のノードを含むツリーになります。
+     * 
+     * @param key 系統キー
+     * @return 範囲の上限
+     */
+    public static String upperBound(String key) {
+
+        return key + UPPER_BOUND_CHAR;
+    }
+
+    private static String encode(long value, int width) {
+
+        if (value < 0) {
+            long unsigned = width == 16 ? value ^ Long.MIN_VALUE : value - Integer.MIN_VALUE;
+            String hex = Long.toHexString(unsigned);
+            return NEGATIVE_CHAR + "0".repeat(width - hex.length()) + hex;
+        }
+        String hex = Long.toHexString(value);
+        return LENGTH_CHARS.charAt(hex.length() - 1) + hex;
+    }
+}
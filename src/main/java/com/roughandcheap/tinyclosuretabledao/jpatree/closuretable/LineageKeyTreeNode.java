@@ -0,0 +1,24 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+/**
+ * 系統キーを保持する閉包テーブルツリーノード
+ * <p>
+ * このインターフェースを実装したノードは、ClosureTableTreeDao によって系統キー（{@link LineageKey}）が維持されます。
+ * 系統キーの順に並べ替えることで、ツリーを表示順に 1 回の索引範囲検索で取得できます。
+ * <p>
+ * 系統キーの列には索引を作成し、大文字と小文字を区別するバイナリ照合順序を指定してください。
+ * 
+ * @author Zatsurendo
+ */
+public interface LineageKeyTreeNode extends ClosureTableTreeNode {
+
+    /**
+     * The lineage key of this node, or null if the node is not part of a tree.
+     * The private Java property name for this MUST BE "lineageKey" in any implementation,
+     * as that name is used in DAO queries.
+     * @return
+     */
+    String getLineageKey();
+
+    void setLineageKey(String lineageKey);
+}
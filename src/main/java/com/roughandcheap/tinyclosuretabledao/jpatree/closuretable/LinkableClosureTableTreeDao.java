@@ -51,6 +51,19 @@ public class LinkableClosureTableTreeDao<N extends AbstractLinkableClosureTableT
         return super.addChild(parent, child);
     }
 
+    /**
+     * {@inheritDoc}
+     * @throws LinkableJpaTreeException parent がリンクの場合
+     */
+    @Override
+    public List<N> addChildren(N parent, List<N> children, int startOrderIndex) {
+
+        if (parent != null && isLink(parent)) {
+            throw new LinkableJpaTreeException("Type.LINK node cannot add child.");
+        }
+        return super.addChildren(parent, children, startOrderIndex);
+    }
+
     /**
      * {@code parent} がリンクかどうかを返します
      * <p>
@@ -86,6 +99,32 @@ public class LinkableClosureTableTreeDao<N extends AbstractLinkableClosureTableT
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * ノードを削除する場合、ツリーの外側のノードからツリー内のノードへのリンクを 1 回のクエリで確認します。
+     * ツリー内のノード同士のリンクは削除前に解除します。
+     * 
+     * @throws LinkableJpaTreeException ツリー内のノードがツリー外のノードのリンク先となっている場合
+     */
+    @Override
+    public void deleteSubtree(N root, boolean removeNodes) {
+
+        if (removeNodes) {
+            String subtreeString = "select s.descendant.id from " + pathEntityName() + " s where s.ancestor = ?1";
+            String queryString = "select count(n) from " + nodeEntityName() + " n "
+                    + "where n.linkTo.id in (" + subtreeString + ") "
+                    + "and n.id not in (" + subtreeString + ")";
+            if (0 < session.queryCount(queryString, Arrays.asList(root).toArray())) {
+                throw new LinkableJpaTreeException("nodes in specified tree are whome linkTo of other nodes. " + root.toString());
+            }
+            String updateString = "update " + nodeEntityName() + " n set n.linkTo = null "
+                    + "where n.linkTo is not null and n.id in (" + subtreeString + ")";
+            session.executeUpdate(updateString, Arrays.asList(root).toArray());
+        }
+        super.deleteSubtree(root, removeNodes);
+    }
+
     /** {@inheritDoc} */
     @Override
     public N addLinkTo(N node, N linkTo) {
@@ -0,0 +1,92 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * 名前パスとノード ID の、件数に上限のあるキャッシュ
+ * <p>
+ * 上限を超えた場合は、最も長く参照されていないエントリから破棄します。
+ * 上限が 0 以下の場合はキャッシュしません。
+ *
+ * @author Zatsurendo
+ */
+final class NamePathCache {
+
+    /** 最大件数 */
+    private volatile int maximumSize;
+    /** 名前パスとノード ID（アクセス順） */
+    private final LinkedHashMap<List<String>, Serializable> ids = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, Serializable> eldest) {
+            return size() > maximumSize;
+        }
+    };
+
+    /**
+     * コンストラクタ
+     *
+     * @param maximumSize 最大件数
+     */
+    NamePathCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /** @return 最大件数 */
+    int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 最大件数を設定し、全てのエントリを破棄します
+     *
+     * @param maximumSize 最大件数（0 以下の場合はキャッシュしない）
+     */
+    synchronized void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+        ids.clear();
+    }
+
+    /**
+     * 名前パスのノード ID を返します
+     *
+     * @param namePath ルートからのノード名
+     * @return ノード ID（キャッシュに存在しない場合は null）
+     */
+    @Nullable
+    synchronized Serializable get(List<String> namePath) {
+        return maximumSize > 0 ? ids.get(namePath) : null;
+    }
+
+    /**
+     * 名前パスのノード ID を登録します
+     *
+     * @param namePath ルートからのノード名
+     * @param id       ノード ID
+     */
+    synchronized void put(List<String> namePath, Serializable id) {
+        if (maximumSize > 0) {
+            ids.put(namePath, id);
+        }
+    }
+
+    /**
+     * 名前パスのエントリを破棄します
+     *
+     * @param namePath ルートからのノード名
+     */
+    synchronized void remove(List<String> namePath) {
+        ids.remove(namePath);
+    }
+
+    /**
+     * 全てのエントリを破棄します
+     */
+    synchronized void clear() {
+        ids.clear();
+    }
+}
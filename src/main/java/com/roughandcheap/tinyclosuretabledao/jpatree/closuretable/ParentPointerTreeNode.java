@@ -0,0 +1,34 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+/**
+ * 親ノードの ID とルートフラグを保持する閉包テーブルツリーノード
+ * <p>
+ * このインターフェースを実装したノードは、ClosureTableTreeDao によって親ノードの ID とルートフラグが維持されます。
+ * ルートノードの一覧、親ノード、兄弟ノードの取得は、閉包テーブルを走査せずにノードの索引のみで行います。
+ * <p>
+ * 親ノードの ID とルートフラグの列には索引を作成してください。
+ * 
+ * @author Zatsurendo
+ */
+public interface ParentPointerTreeNode extends ClosureTableTreeNode {
+
+    /**
+     * The id of the parent node, or null if this node is a root or not part of a tree.
+     * The private Java property name for this MUST BE "parentId" in any implementation,
+     * as that name is used in DAO queries.
+     * @return
+     */
+    Long getParentId();
+
+    void setParentId(Long parentId);
+
+    /**
+     * True if this node is a root node of a tree.
+     * The private Java property name for this MUST BE "treeRoot" in any implementation,
+     * as that name is used in DAO queries.
+     * @return
+     */
+    boolean isTreeRoot();
+
+    void setTreeRoot(boolean treeRoot);
+}
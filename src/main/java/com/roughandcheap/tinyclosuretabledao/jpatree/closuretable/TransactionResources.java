@@ -0,0 +1,95 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * トランザクションごとのリソースを、Spring のトランザクション同期で束縛するヘルパー
+ * <p>
+ * リソースは種類、所有者（索引やキャッシュなど）、トランザクションの Hibernate セッションの組ごとに束縛し、
+ * トランザクションの終了時に解除します。{@code REQUIRES_NEW} で開始した内側のトランザクションは
+ * 別のセッションになるため、外側のトランザクションとは別のリソースを使用します。
+ *
+ * @author Zatsurendo
+ */
+final class TransactionResources {
+
+    private TransactionResources() {
+    }
+
+    /**
+     * トランザクション同期が有効かどうかを返します
+     *
+     * @return true:有効
+     */
+    static boolean isActive() {
+        return TransactionSynchronizationManager.isSynchronizationActive();
+    }
+
+    /**
+     * 束縛済みのリソースを返します
+     *
+     * @param type               リソースの型
+     * @param owner              リソースの所有者
+     * @param transactionSession トランザクションの Hibernate セッション
+     * @return リソース（トランザクション同期が無効な場合、未束縛の場合は null）
+     */
+    @Nullable
+    static <T> T find(Class<T> type, Object owner, Object transactionSession) {
+
+        if (!isActive()) {
+            return null;
+        }
+        return type.cast(TransactionSynchronizationManager.getResource(new Key(type, owner, transactionSession)));
+    }
+
+    /**
+     * 束縛済みのリソースを返し、未束縛の場合は作成して束縛します
+     * <p>
+     * トランザクション同期が有効な場合のみ呼び出してください。
+     * 束縛を解除してから {@code afterCommit} を呼び出すため、{@code afterCommit} の中で開始した
+     * トランザクションからはリソースを参照しません。
+     *
+     * @param type               リソースの型
+     * @param owner              リソースの所有者
+     * @param transactionSession トランザクションの Hibernate セッション
+     * @param factory            リソースを作成する処理
+     * @param afterCommit        コミット後にリソースを渡す処理（null 可）
+     * @return リソース
+     */
+    static <T> T getOrBind(Class<T> type, Object owner, Object transactionSession, Supplier<T> factory,
+            @Nullable Consumer<? super T> afterCommit) {
+
+        Key key = new Key(type, owner, transactionSession);
+        T resource = type.cast(TransactionSynchronizationManager.getResource(key));
+        if (resource != null) {
+            return resource;
+        }
+        T created = factory.get();
+        TransactionSynchronizationManager.bindResource(key, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+                if (afterCommit != null) {
+                    afterCommit.accept(created);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+            }
+        });
+        return created;
+    }
+
+    /** トランザクションにリソースを束縛するキー */
+    private record Key(Class<?> type, Object owner, Object transactionSession) {
+    }
+}
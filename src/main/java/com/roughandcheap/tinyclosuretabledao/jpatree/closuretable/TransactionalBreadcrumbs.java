@@ -0,0 +1,104 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.io.Serializable;
+import java.util.function.Supplier;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.roughandcheap.tinyclosuretabledao.jpatree.BreadcrumbCache;
+
+/**
+ * 祖先 ID のキャッシュ（{@link BreadcrumbCache}）を、トランザクションに合わせて使用する
+ * <p>
+ * ツリーを更新したトランザクションでは、コミット前のパスをキャッシュに登録しません。
+ * 状態はキャッシュとトランザクションの Hibernate セッションごとに保持します。
+ *
+ * @author Zatsurendo
+ */
+final class TransactionalBreadcrumbs {
+
+    private final BreadcrumbCache cache;
+    private final Supplier<Object> transactionSession;
+
+    /**
+     * コンストラクタ
+     *
+     * @param cache              祖先 ID のキャッシュ
+     * @param transactionSession 現在のトランザクションの Hibernate セッションを返す処理
+     */
+    TransactionalBreadcrumbs(BreadcrumbCache cache, Supplier<Object> transactionSession) {
+        this.cache = cache;
+        this.transactionSession = transactionSession;
+    }
+
+    /** @return 祖先 ID のキャッシュ */
+    BreadcrumbCache cache() {
+        return cache;
+    }
+
+    /**
+     * {@code rootId} のツリーに属するノードのエントリを破棄します
+     * <p>
+     * トランザクション内では、コミット前に他のトランザクションが古いパスを登録する可能性があるため、
+     * トランザクションの終了時にも破棄します。
+     *
+     * @param rootId ツリーの親ノードの ID
+     */
+    void invalidateSubtree(Serializable rootId) {
+
+        cache.invalidateSubtree(rootId);
+        if (TransactionResources.isActive()) {
+            markWritten();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidateSubtree(rootId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 現在のトランザクションでツリーを更新したことを記録します
+     */
+    void markWritten() {
+
+        if (TransactionResources.isActive()) {
+            state().written = true;
+        }
+    }
+
+    /**
+     * 祖先 ID を読み取る前のキャッシュの世代を返します
+     * <p>
+     * トランザクション内では、最初にキャッシュを参照した時点の世代を返します。
+     * トランザクション内の読み取りはそれ以前の時点のデータを返す可能性があるため（MySQL の REPEATABLE READ など）、
+     * その後に他のトランザクションの更新でキャッシュが破棄されていれば登録しません。
+     *
+     * @return 世代（現在のトランザクションでツリーを更新した場合は -1）
+     */
+    long epoch() {
+
+        if (!TransactionResources.isActive()) {
+            return cache.getEpoch();
+        }
+        State state = state();
+        return state.written ? -1 : state.epoch;
+    }
+
+    private State state() {
+        return TransactionResources.getOrBind(State.class, cache, transactionSession.get(),
+                () -> new State(cache.getEpoch()), null);
+    }
+
+    /** トランザクションごとのキャッシュの状態 */
+    private static final class State {
+        private final long epoch;
+        private boolean written;
+
+        private State(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
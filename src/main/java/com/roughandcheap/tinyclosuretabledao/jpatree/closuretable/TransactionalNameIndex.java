@@ -0,0 +1,111 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.roughandcheap.tinyclosuretabledao.jpatree.NodeNameTrigramIndex;
+import com.roughandcheap.tinyclosuretabledao.jpatree.TreeNode;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * ノード名の索引への変更を、トランザクションのコミット後に反映する
+ * <p>
+ * トランザクション同期が有効な場合は、変更をトランザクションに保持し、コミット後に反映します
+ * （ロールバックした場合は反映しません）。同期が無効な場合は、すぐに反映します。
+ * 変更は索引とトランザクションの Hibernate セッションごとに保持するため、同じ索引を設定した DAO は変更を共有します。
+ *
+ * @author Zatsurendo
+ */
+final class TransactionalNameIndex {
+
+    private final NodeNameTrigramIndex index;
+    private final Supplier<Object> transactionSession;
+
+    /**
+     * コンストラクタ
+     *
+     * @param index              ノード名の索引
+     * @param transactionSession 現在のトランザクションの Hibernate セッションを返す処理
+     */
+    TransactionalNameIndex(NodeNameTrigramIndex index, Supplier<Object> transactionSession) {
+        this.index = index;
+        this.transactionSession = transactionSession;
+    }
+
+    /** @return ノード名の索引 */
+    NodeNameTrigramIndex index() {
+        return index;
+    }
+
+    /**
+     * ノードを索引に登録、更新します
+     *
+     * @param node ノード
+     */
+    void put(TreeNode node) {
+        change(i -> i.put(node), node.getId());
+    }
+
+    /**
+     * ノードを索引から削除します
+     *
+     * @param id ノード ID
+     */
+    void remove(Serializable id) {
+        change(i -> i.remove(id), null);
+    }
+
+    /**
+     * 部分一致検索の候補となるノード ID を返します
+     * <p>
+     * 現在のトランザクションで登録、更新し、まだ索引に反映していないノードも候補に含めます。
+     *
+     * @param fragment 検索文字列
+     * @return ノード ID の集合（{@code fragment} が 3 文字未満で絞り込めない場合は null）
+     */
+    @Nullable
+    Set<Serializable> candidates(String fragment) {
+
+        Set<Serializable> candidates = index.candidates(fragment);
+        if (candidates == null || !TransactionResources.isActive()) {
+            return candidates;
+        }
+        PendingChanges pending = TransactionResources.find(PendingChanges.class, index, transactionSession.get());
+        if (pending != null) {
+            candidates.addAll(pending.putIds);
+        }
+        return candidates;
+    }
+
+    /**
+     * 索引を変更します
+     *
+     * @param change 索引の変更
+     * @param putId  登録、更新するノードの ID（削除の場合は null）
+     */
+    private void change(Consumer<NodeNameTrigramIndex> change, @Nullable Serializable putId) {
+
+        if (!TransactionResources.isActive()) {
+            change.accept(index);
+            return;
+        }
+        PendingChanges pending = TransactionResources.getOrBind(PendingChanges.class, index, transactionSession.get(),
+                PendingChanges::new, committed -> committed.changes.forEach(c -> c.accept(index)));
+        pending.changes.add(change);
+        if (putId != null) {
+            pending.putIds.add(putId);
+        }
+    }
+
+    /** コミット後に反映する索引の変更 */
+    private static final class PendingChanges {
+        private final List<Consumer<NodeNameTrigramIndex>> changes = new ArrayList<>();
+        private final Set<Serializable> putIds = new HashSet<>();
+    }
+}
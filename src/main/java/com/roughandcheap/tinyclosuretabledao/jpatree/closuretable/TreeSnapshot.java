@@ -0,0 +1,483 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 森（ツリーの集合）の構造を保持する不変のスナップショット
+ * <p>
+ * ノードは ID の昇順に並べた配列の添字で表し、親子関係は全てプリミティブ型の配列で保持します。
+ * <ul>
+ * <li>{@code parent}、{@code firstChild}、{@code nextSibling}: 親、最初の子、次の兄弟（兄弟は {@code (orderIndex, id)} の順）</li>
+ * <li>{@code enter}、{@code exit}: 行きがけ順（オイラーツアー）でのノードの位置と、ツリーの最後の子孫の位置</li>
+ * </ul>
+ * 祖先の判定、子ノードの走査、ツリーの走査は、オブジェクトを生成せずに配列の参照のみで行えます。
+ * 配列は生成後に変更しないため、複数のスレッドから同期せずに参照できます。
+ *
+ * @author Zatsurendo
+ */
+public final class TreeSnapshot {
+
+    /** 親ノードが存在しないことを表す ID */
+    public static final long NO_PARENT = Long.MIN_VALUE;
+    /** ノードが存在しないことを表す添字 */
+    public static final int NONE = -1;
+
+    /** ID の昇順に並べたノード ID */
+    private final long[] ids;
+    private final int[] orderIndex;
+    private final int[] parent;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    /** 最初のルートノード（ルートノード同士は nextSibling でつながる） */
+    private final int firstRoot;
+    private final int[] enter;
+    private final int[] exit;
+    private final int[] level;
+    /** 行きがけ順の位置とノード */
+    private final int[] preorder;
+
+    private TreeSnapshot(long[] ids, int[] orderIndex, int[] parent, int[] firstChild, int[] nextSibling, int firstRoot) {
+
+        int size = ids.length;
+        this.ids = ids;
+        this.orderIndex = orderIndex;
+        this.parent = parent;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.firstRoot = firstRoot;
+        this.enter = new int[size];
+        this.exit = new int[size];
+        this.level = new int[size];
+        this.preorder = new int[size];
+
+        // 行きがけ順に位置を付ける
+        int[] stack = new int[size];
+        int top = 0;
+        int position = 0;
+        for (int root = firstRoot; root != NONE; root = nextSibling[root]) {
+            stack[top++] = root;
+            level[root] = 0;
+            while (top > 0) {
+                int i = stack[--top];
+                enter[i] = position;
+                preorder[position++] = i;
+                // 兄弟を逆順に積むと、先頭の子から取り出される
+                int count = 0;
+                for (int c = firstChild[i]; c != NONE; c = nextSibling[c]) {
+                    count++;
+                }
+                int c = firstChild[i];
+                for (int k = count - 1; k >= 0; k--) {
+                    stack[top + k] = c;
+                    level[c] = level[i] + 1;
+                    c = nextSibling[c];
+                }
+                top += count;
+            }
+        }
+        // 子孫の最後の位置は、後ろから親へ伝播して求める
+        for (int pos = position - 1; pos >= 0; pos--) {
+            int i = preorder[pos];
+            if (exit[i] < enter[i]) {
+                exit[i] = enter[i];
+            }
+            if (parent[i] != NONE && exit[parent[i]] < exit[i]) {
+                exit[parent[i]] = exit[i];
+            }
+        }
+    }
+
+    /**
+     * (orderIndex, 添字) の順に、各ノードを親の子ノードの末尾につなぎます
+     *
+     * @return 最初のルートノード
+     */
+    private static int link(int[] orderIndex, int[] parent, int[] firstChild, int[] nextSibling) {
+
+        int size = parent.length;
+        Arrays.fill(firstChild, NONE);
+        Arrays.fill(nextSibling, NONE);
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = siblingKey(orderIndex[i], i);
+        }
+        Arrays.sort(keys);
+        int[] lastChild = new int[size];
+        Arrays.fill(lastChild, NONE);
+        int rootHead = NONE;
+        int rootTail = NONE;
+        for (long key : keys) {
+            int i = (int) key;
+            int p = parent[i];
+            if (p == NONE) {
+                if (rootTail == NONE) {
+                    rootHead = i;
+                } else {
+                    nextSibling[rootTail] = i;
+                }
+                rootTail = i;
+            } else {
+                if (lastChild[p] == NONE) {
+                    firstChild[p] = i;
+                } else {
+                    nextSibling[lastChild[p]] = i;
+                }
+                lastChild[p] = i;
+            }
+        }
+        return rootHead;
+    }
+
+    /** 兄弟を (orderIndex, 添字) の順に並べるキー（下位 32 ビットが添字） */
+    private static long siblingKey(int orderIndex, int index) {
+        return ((long) (orderIndex ^ Integer.MIN_VALUE) << 32) | index;
+    }
+
+    /**
+     * ノードの一覧からスナップショットを作成します
+     *
+     * @param nodeIds     ノード ID
+     * @param orderIndexes 各ノードの並び順
+     * @param parentIds   各ノードの親ノード ID（ルートの場合は {@link #NO_PARENT}）
+     * @return スナップショット
+     * @throws IllegalArgumentException 配列の長さが異なる場合
+     */
+    public static TreeSnapshot of(long[] nodeIds, int[] orderIndexes, long[] parentIds) {
+
+        if (nodeIds.length != orderIndexes.length || nodeIds.length != parentIds.length) {
+            throw new IllegalArgumentException("array lengths differ");
+        }
+        int size = nodeIds.length;
+        long[] ids = nodeIds.clone();
+        Arrays.sort(ids);
+        int[] orderIndex = new int[size];
+        int[] parent = new int[size];
+        for (int k = 0; k < size; k++) {
+            int i = Arrays.binarySearch(ids, nodeIds[k]);
+            orderIndex[i] = orderIndexes[k];
+            // 親ノードがスナップショットに含まれない場合はルートとして扱う
+            parent[i] = parentIds[k] == NO_PARENT ? NONE : Math.max(Arrays.binarySearch(ids, parentIds[k]), NONE);
+        }
+        int[] firstChild = new int[size];
+        int[] nextSibling = new int[size];
+        int firstRoot = link(orderIndex, parent, firstChild, nextSibling);
+        return new TreeSnapshot(ids, orderIndex, parent, firstChild, nextSibling, firstRoot);
+    }
+
+    /**
+     * {@code changedIds} のノードを置き換えたスナップショットを作成します
+     * <p>
+     * このスナップショットは変更しません。{@code changedIds} に含まれ、{@code nodeIds} に含まれないノードは削除されます。
+     * 変更のないノードは添字を置き換えて引き継ぎ、全体の並べ替えは行いません。兄弟の並べ直しは、子ノードが
+     * 変わった親の分のみ行います。ノードの追加、削除がない場合は ID の配列を共有します。
+     * 行きがけ順の位置と深さは、1 回の走査で求め直します。
+     *
+     * @param changedIds   置き換えるノード ID（削除したノードを含む）
+     * @param nodeIds      置き換え後のノード ID
+     * @param orderIndexes 置き換え後の各ノードの並び順
+     * @param parentIds    置き換え後の各ノードの親ノード ID（ルートの場合は {@link #NO_PARENT}）
+     * @return 新しいスナップショット
+     * @throws IllegalArgumentException 配列の長さが異なる場合
+     */
+    public TreeSnapshot withChanges(Set<Long> changedIds, long[] nodeIds, int[] orderIndexes, long[] parentIds) {
+
+        if (nodeIds.length != orderIndexes.length || nodeIds.length != parentIds.length) {
+            throw new IllegalArgumentException("array lengths differ");
+        }
+        Map<Long, Integer> rows = new HashMap<>();
+        for (int k = 0; k < nodeIds.length; k++) {
+            rows.put(nodeIds[k], k);
+        }
+        long[] sortedIds = nodeIds.clone();
+        Arrays.sort(sortedIds);
+
+        // 変更前の添字から変更後の添字への対応を、ID の併合で求める（削除したノードは NONE）
+        int[] map = new int[ids.length];
+        long[] merged = new long[ids.length + sortedIds.length];
+        int[] mergedRow = new int[merged.length];
+        int size = 0;
+        boolean reshaped = false;
+        for (int i = 0, j = 0; i < ids.length || j < sortedIds.length;) {
+            if (j == sortedIds.length || (i < ids.length && ids[i] < sortedIds[j])) {
+                if (changedIds.contains(ids[i])) {
+                    map[i] = NONE;
+                    reshaped = true;
+                } else {
+                    map[i] = size;
+                    mergedRow[size] = NONE;
+                    merged[size++] = ids[i];
+                }
+                i++;
+            } else {
+                if (i < ids.length && ids[i] == sortedIds[j]) {
+                    map[i] = size;
+                    i++;
+                } else {
+                    reshaped = true;
+                }
+                mergedRow[size] = rows.get(sortedIds[j]);
+                merged[size++] = sortedIds[j++];
+            }
+        }
+        long[] newIds = reshaped ? Arrays.copyOf(merged, size) : ids;
+
+        // 置き換えたノード（親が削除されたノードを含む）は、行から並び順と親を求める
+        int[] newOrder = new int[size];
+        int[] newParent = new int[size];
+        boolean[] replaced = new boolean[size];
+        for (int n = 0; n < size; n++) {
+            int row = mergedRow[n];
+            if (row != NONE) {
+                replaced[n] = true;
+                newOrder[n] = orderIndexes[row];
+                newParent[n] = parentIds[row] == NO_PARENT ? NONE : Math.max(Arrays.binarySearch(newIds, parentIds[row]), NONE);
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            int n = map[i];
+            if (n == NONE || replaced[n]) {
+                continue;
+            }
+            newOrder[n] = orderIndex[i];
+            int p = parent[i];
+            if (p != NONE && map[p] == NONE) {
+                replaced[n] = true;
+                newParent[n] = NONE;
+            } else {
+                newParent[n] = p == NONE ? NONE : map[p];
+            }
+        }
+
+        // 子ノードが変わる親（ルートの並びは rootsAffected）
+        boolean[] affected = new boolean[size];
+        boolean rootsAffected = false;
+        for (int i = 0; i < ids.length; i++) {
+            if (map[i] == NONE || replaced[map[i]]) {
+                int p = parent[i];
+                if (p == NONE) {
+                    rootsAffected = true;
+                } else if (map[p] != NONE) {
+                    affected[map[p]] = true;
+                }
+            }
+        }
+        for (int n = 0; n < size; n++) {
+            if (replaced[n]) {
+                if (newParent[n] == NONE) {
+                    rootsAffected = true;
+                } else {
+                    affected[newParent[n]] = true;
+                }
+            }
+        }
+
+        // 子ノードが変わらない親のつながりは、添字を置き換えて引き継ぐ
+        int[] newFirstChild = new int[size];
+        int[] newNextSibling = new int[size];
+        Arrays.fill(newFirstChild, NONE);
+        Arrays.fill(newNextSibling, NONE);
+        for (int i = 0; i < ids.length; i++) {
+            int n = map[i];
+            if (n == NONE) {
+                continue;
+            }
+            if (!affected[n] && firstChild[i] != NONE) {
+                newFirstChild[n] = map[firstChild[i]];
+            }
+            if (!replaced[n] && nextSibling[i] != NONE && !(newParent[n] == NONE ? rootsAffected : affected[newParent[n]])) {
+                newNextSibling[n] = map[nextSibling[i]];
+            }
+        }
+        int newFirstRoot = (rootsAffected || firstRoot == NONE) ? NONE : map[firstRoot];
+
+        // 子ノードが変わる親は、その子ノードのみを並べ直してつなぐ
+        Map<Integer, List<Long>> siblings = new HashMap<>();
+        for (int n = 0; n < size; n++) {
+            int p = newParent[n];
+            if (replaced[n] || (p == NONE ? rootsAffected : affected[p])) {
+                siblings.computeIfAbsent(p, k -> new ArrayList<>()).add(siblingKey(newOrder[n], n));
+            }
+        }
+        for (Map.Entry<Integer, List<Long>> entry : siblings.entrySet()) {
+            int p = entry.getKey();
+            List<Long> keys = entry.getValue();
+            Collections.sort(keys);
+            int prev = NONE;
+            for (long key : keys) {
+                int c = (int) key;
+                if (prev != NONE) {
+                    newNextSibling[prev] = c;
+                } else if (p == NONE) {
+                    newFirstRoot = c;
+                } else {
+                    newFirstChild[p] = c;
+                }
+                prev = c;
+            }
+        }
+        return new TreeSnapshot(newIds, newOrder, newParent, newFirstChild, newNextSibling, newFirstRoot);
+    }
+
+    /** @return ノード数 */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * ノード ID の添字を返します
+     *
+     * @param id ノード ID
+     * @return 添字（存在しない場合は {@link #NONE}）
+     */
+    public int indexOf(long id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i < 0 ? NONE : i;
+    }
+
+    public long id(int index) {
+        return ids[index];
+    }
+
+    public int orderIndex(int index) {
+        return orderIndex[index];
+    }
+
+    public int parent(int index) {
+        return parent[index];
+    }
+
+    public int firstChild(int index) {
+        return firstChild[index];
+    }
+
+    public int nextSibling(int index) {
+        return nextSibling[index];
+    }
+
+    public int firstRoot() {
+        return firstRoot;
+    }
+
+    /** @return ルートからの深さ（ルートは 0） */
+    public int level(int index) {
+        return level[index];
+    }
+
+    /** @return ツリーのノード数（自身を含む） */
+    public int subtreeSize(int index) {
+        return exit[index] - enter[index] + 1;
+    }
+
+    /**
+     * {@code ancestor} が {@code descendant} の祖先（自身を含む）かどうかを返します
+     *
+     * @param ancestor   祖先の添字
+     * @param descendant 子孫の添字
+     * @return true:祖先である
+     */
+    public boolean isAncestor(int ancestor, int descendant) {
+        return enter[ancestor] <= enter[descendant] && enter[descendant] <= exit[ancestor];
+    }
+
+    /** @return 直下の子ノード数 */
+    public int childCount(int index) {
+        int count = 0;
+        for (int c = firstChild[index]; c != NONE; c = nextSibling[c]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 直下の子ノードの ID を並び順に返します
+     *
+     * @param index 親の添字
+     * @return 子ノード ID
+     */
+    public long[] childIds(int index) {
+        long[] result = new long[childCount(index)];
+        int k = 0;
+        for (int c = firstChild[index]; c != NONE; c = nextSibling[c]) {
+            result[k++] = ids[c];
+        }
+        return result;
+    }
+
+    /**
+     * ルートノードの ID を並び順に返します
+     *
+     * @return ルートノード ID
+     */
+    public long[] rootIds() {
+        int count = 0;
+        for (int r = firstRoot; r != NONE; r = nextSibling[r]) {
+            count++;
+        }
+        long[] result = new long[count];
+        int k = 0;
+        for (int r = firstRoot; r != NONE; r = nextSibling[r]) {
+            result[k++] = ids[r];
+        }
+        return result;
+    }
+
+    /**
+     * ルートからノードまでの ID を返します
+     *
+     * @param index ノードの添字
+     * @return ルートから順のノード ID（自身を含む）
+     */
+    public long[] pathIds(int index) {
+        long[] result = new long[level[index] + 1];
+        for (int i = index, k = result.length - 1; i != NONE; i = parent[i], k--) {
+            result[k] = ids[i];
+        }
+        return result;
+    }
+
+    /**
+     * ツリーのノード ID を行きがけ順（表示順）に返します
+     *
+     * @param index ツリーの親の添字
+     * @return ノード ID（自身を含む）
+     */
+    public long[] subtreeIds(int index) {
+        long[] result = new long[subtreeSize(index)];
+        for (int pos = enter[index], k = 0; pos <= exit[index]; pos++, k++) {
+            result[k] = ids[preorder[pos]];
+        }
+        return result;
+    }
+
+    /**
+     * ツリーのノード ID を深さの順（幅優先）に返します
+     * <p>
+     * 同じ深さのノードは、親ノードの順、並び順の順に並びます。
+     *
+     * @param index ツリーの親の添字
+     * @return ノード ID（自身を含む）
+     */
+    public long[] levelOrderIds(int index) {
+        int[] queue = new int[subtreeSize(index)];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = index;
+        while (head < tail) {
+            int i = queue[head++];
+            for (int c = firstChild[i]; c != NONE; c = nextSibling[c]) {
+                queue[tail++] = c;
+            }
+        }
+        long[] result = new long[tail];
+        for (int k = 0; k < tail; k++) {
+            result[k] = ids[queue[k]];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,56 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString(callSuper = true)
+@EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = true)
+@Entity
+@Table(indexes = {
+        @Index(name = "ix_category_ctt_lineage_key", columnList = "lineage_key"),
+        @Index(name = "ix_category_ctt_parent_id", columnList = "parent_id"),
+        @Index(name = "ix_category_ctt_tree_root", columnList = "tree_root") })
+public class CategoryCtt extends AbstractClosureTableTreeNode<CategoryCtt> implements LineageKeyTreeNode, ParentPointerTreeNode {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Column(name = "lineage_key", columnDefinition = "varchar(760) character set ascii collate ascii_bin")
+    private String lineageKey;
+
+    @Column(name = "parent_id")
+    private Long parentId;
+
+    @Column(name = "tree_root")
+    private boolean treeRoot;
+
+    public CategoryCtt(String name) {
+        super(name);
+    }
+
+    public CategoryCtt(Long id, String name) {
+        super(name);
+        this.id = id;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CategoryCtt clone() {
+        return new CategoryCtt(id, nodeName);
+    }
+}
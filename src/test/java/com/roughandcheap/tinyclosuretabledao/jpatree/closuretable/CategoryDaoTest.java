@@ -0,0 +1,207 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.roughandcheap.tinyclosuretabledao.commons.DbSession;
+import com.roughandcheap.tinyclosuretabledao.jpatree.JpaTreeException;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+
+/**
+ * 系統キーと親ノードの ID を持つノード（{@link LineageKeyTreeNode}、{@link ParentPointerTreeNode}）の
+ * {@link ClosureTableTreeDao} のテスト
+ * <p>
+ * データの構成と ID は {@link ClosureTableTreeDaoTest} と同じです。
+ */
+@SpringBootTest
+@Transactional
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CategoryDaoTest {
+
+    @Autowired
+    DbSession dbSession;
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @BeforeAll
+    public void setup() {
+        createInitialData();
+    }
+
+    @Test
+    public void testGetTreeInDisplayOrder() {
+
+        ClosureTableTreeDao<CategoryCtt, CategoryTreePath> dao = getDao();
+        List<Long> ids = dao.getTreeInDisplayOrder(dao.find(8L)).stream().map(CategoryCtt::getId).toList();
+        assertEquals(List.of(8L, 9L, 10L, 11L, 12L, 15L, 16L, 13L, 19L, 20L, 14L, 21L, 23L, 22L), ids);
+
+        dao.moveTo(dao.find(21L), dao.find(2L), 0);
+        assertEquals(11, dao.getTreeInDisplayOrder(dao.find(8L)).size());
+        ids = dao.getTreeInDisplayOrder(dao.find(2L)).stream().map(CategoryCtt::getId).toList();
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L, 17L, 18L, 7L, 24L, 25L, 21L, 23L, 22L), ids);
+
+        dao.rebuildLineageKeys();
+        assertEquals(ids, dao.getTreeInDisplayOrder(dao.find(2L)).stream().map(CategoryCtt::getId).toList());
+        dao.deleteSubtree(dao.find(21L), false);
+        assertNull(dao.find(22L).getLineageKey());
+    }
+
+    @Test
+    public void testLineageKeysOfAddedAndCopiedNodes() {
+
+        ClosureTableTreeDao<CategoryCtt, CategoryTreePath> dao = getDao();
+        dao.addChildren(dao.find(25L), List.of(new CategoryCtt("追加 1"), new CategoryCtt("追加 2")), 0);
+        assertEquals(3, dao.getTreeInDisplayOrder(dao.find(25L)).size());
+
+        CategoryCtt copy = dao.copySubtree(dao.find(7L), dao.find(3L));
+        List<CategoryCtt> tree = dao.getTreeInDisplayOrder(dao.find(3L));
+        assertEquals(6, tree.size());
+        assertEquals(3L, tree.get(0).getId());
+        assertEquals(copy.getId(), tree.get(1).getId());
+        assertTrue(tree.get(1).getLineageKey().startsWith(dao.find(3L).getLineageKey()));
+    }
+
+    @Test
+    public void testLineageKeysKeepManagedEntities() {
+
+        ClosureTableTreeDao<CategoryCtt, CategoryTreePath> dao = getDao();
+        CategoryCtt node = dao.find(21L);
+        CategoryCtt child = dao.find(22L);
+        String oldKey = node.getLineageKey();
+
+        // 並び順のみの更新で、管理下のノード（子孫を含む）の系統キーが DB と一致する
+        dao.procParent(21L, 11L, 60);
+        assertTrue(entityManager.contains(node));
+        assertTrue(entityManager.contains(child));
+        assertNotEquals(oldKey, node.getLineageKey());
+        assertEquals(lineageKeyInDb(21L), node.getLineageKey());
+        assertEquals(lineageKeyInDb(22L), child.getLineageKey());
+        assertTrue(child.getLineageKey().startsWith(node.getLineageKey()));
+
+        // 再生成の後も、管理下のノードへの変更が保存され、系統キーは戻らない
+        CategoryCtt other = dao.find(9L);
+        dao.rebuildLineageKeys();
+        assertTrue(entityManager.contains(node));
+        assertTrue(entityManager.contains(other));
+        assertEquals(lineageKeyInDb(21L), node.getLineageKey());
+        node.setNodeName("並び替え");
+        other.setNodeName("再生成");
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("並び替え", dao.find(21L).getNodeName());
+        assertEquals("再生成", dao.find(9L).getNodeName());
+        assertEquals(node.getLineageKey(), dao.find(21L).getLineageKey());
+        assertEquals(List.of(21L, 23L, 22L), dao.getTreeInDisplayOrder(dao.find(21L)).stream().map(CategoryCtt::getId).toList());
+    }
+
+    @Test
+    public void testParentPointer() {
+
+        ClosureTableTreeDao<CategoryCtt, CategoryTreePath> dao = getDao();
+        assertEquals(2L, dao.find(5L).getParentId());
+        assertTrue(dao.find(1L).isTreeRoot());
+        assertEquals(List.of(1L), dao.getRootNodes().stream().map(CategoryCtt::getId).toList());
+
+        dao.moveTo(dao.find(21L), null, 0);
+        assertTrue(dao.isRoot(dao.find(21L)));
+        assertNull(dao.getParent(dao.find(21L)));
+        assertEquals(21L, dao.getParent(dao.find(22L)).getId());
+        assertEquals(2, dao.getRootNodes().size());
+        assertEquals(2, dao.getSiblings(dao.find(1L)).size());
+
+        dao.deletePath(dao.find(22L));
+        assertFalse(dao.find(22L).isTreeRoot());
+        assertThrows(JpaTreeException.class, () -> dao.getParent(dao.find(22L)));
+
+        CategoryCtt node = dao.find(14L);
+        dao.rebuildParentPointers();
+        assertEquals(2, dao.getRootNodes().size());
+        assertEquals(11L, dao.getParent(dao.find(14L)).getId());
+
+        // 再生成の前に取得したノードは管理下のまま、変更が保存される
+        assertTrue(entityManager.contains(node));
+        assertEquals(11L, node.getParentId());
+        node.setNodeName("再生成");
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("再生成", dao.find(14L).getNodeName());
+        assertEquals(11L, dao.find(14L).getParentId());
+    }
+
+    private String lineageKeyInDb(Long id) {
+        return (String) entityManager.createNativeQuery("select lineage_key from category_ctt where id = ?1")
+                .setParameter(1, id).getSingleResult();
+    }
+
+    private void createInitialData() {
+
+        ClosureTableTreeDao<CategoryCtt, CategoryTreePath> dao = getDao();
+
+        CategoryCtt root = new CategoryCtt("カテゴリ");
+        CategoryCtt camera = new CategoryCtt("カメラ");
+        CategoryCtt dslr = new CategoryCtt("デジタル一眼レフ");
+        CategoryCtt mlsl = new CategoryCtt("ミラーレス一眼");
+        CategoryCtt lens = new CategoryCtt("交換レンズ");
+        CategoryCtt af = new CategoryCtt("オートフォーカスレンズ");
+        CategoryCtt mf = new CategoryCtt("マニュアルフォーカスレンズ");
+        CategoryCtt pc = new CategoryCtt("PC");
+        CategoryCtt notePC = new CategoryCtt("ノートPC");
+        CategoryCtt desktop = new CategoryCtt("デスクトップPC");
+        CategoryCtt pcparts = new CategoryCtt("パソコンパーツ");
+        CategoryCtt cpu = new CategoryCtt("CPU");
+        CategoryCtt memory = new CategoryCtt("メモリ");
+        CategoryCtt chasis = new CategoryCtt("PCケース");
+        CategoryCtt intel = new CategoryCtt("Intel");
+        CategoryCtt amd = new CategoryCtt("AMD");
+        CategoryCtt tan = new CategoryCtt("単焦点レンズ");
+        CategoryCtt zoom = new CategoryCtt("ズームレンズ");
+        CategoryCtt ddr4 = new CategoryCtt("DDR4メモリ");
+        CategoryCtt ddr5 = new CategoryCtt("DDR5メモリ");
+        CategoryCtt storage = new CategoryCtt("ストレージ");
+        CategoryCtt sd = new CategoryCtt("SDカード");
+        CategoryCtt ssd = new CategoryCtt("SSD");
+        CategoryCtt mftan = new CategoryCtt("MF単焦点");
+        CategoryCtt mfzoom = new CategoryCtt("MFズーム");
+
+        dao.createRoot(root);
+        dao.addChild(root, camera);
+        dao.addChild(camera, dslr);
+        dao.addChild(camera, mlsl);
+
+        dao.addChild(camera, lens);
+        dao.addChild(lens, af);
+        dao.addChild(lens, mf);
+        dao.addChild(root, pc);
+        dao.addChild(pc, notePC);
+        dao.addChild(pc, desktop);
+        dao.addChild(pc, pcparts);
+        dao.addChild(pcparts, cpu);
+        dao.addChild(pcparts, memory);
+        dao.addChild(pcparts, chasis);
+        dao.addChild(cpu, intel);
+        dao.addChild(cpu, amd);
+        dao.addChild(af, tan);
+        dao.addChild(af, zoom);
+        dao.addChild(memory, ddr4);
+        dao.addChild(memory, ddr5);
+        dao.addChild(pcparts, storage, 50);
+        dao.addChild(storage, sd, 2);
+        dao.addChild(storage, ssd, 1);
+        dao.addChild(mf, mftan);
+        dao.addChild(mf, mfzoom);
+    }
+
+    private ClosureTableTreeDao<CategoryCtt, CategoryTreePath> getDao() {
+        return new ClosureTableTreeDao<>(CategoryCtt.class, CategoryTreePath.class, dbSession);
+    }
+}
@@ -0,0 +1,49 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Setter
+@Getter
+@ToString(callSuper = true)
+@EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = false)
+@IdClass(CategoryTreePathId.class)
+@Table(indexes = {
+        @Index(name = "ix_category_tree_path_descendant_depth", columnList = "descendant, depth") })
+@Entity
+public class CategoryTreePath extends AbstractTreePath<CategoryCtt> {
+
+    @Id
+    @ManyToOne(targetEntity = CategoryCtt.class)
+    @JoinColumn(name = "ancestor", nullable = false)
+    @EqualsAndHashCode.Include
+    private CategoryCtt ancestor;
+    @Id
+    @ManyToOne(targetEntity = CategoryCtt.class)
+    @JoinColumn(name = "descendant", nullable = false)
+    @EqualsAndHashCode.Include
+    private CategoryCtt descendant;
+
+    public CategoryTreePath(CategoryCtt ancestor, CategoryCtt descendant, int depth, int orderIndex) {
+        super(depth, orderIndex);
+        this.ancestor = ancestor;
+        this.descendant = descendant;
+    }
+
+    public CategoryTreePath clone() {
+        return new CategoryTreePath(ancestor, descendant, depth, orderIndex);
+    }
+}
@@ -2,7 +2,17 @@ package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
 import org.hibernate.PropertyValueException;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -10,9 +20,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.roughandcheap.tinyclosuretabledao.commons.DbSession;
+import com.roughandcheap.tinyclosuretabledao.jpatree.BreadcrumbCache;
+import com.roughandcheap.tinyclosuretabledao.jpatree.ChildCursor;
+import com.roughandcheap.tinyclosuretabledao.jpatree.ChildWithCounts;
+import com.roughandcheap.tinyclosuretabledao.jpatree.ChildrenPage;
+import com.roughandcheap.tinyclosuretabledao.jpatree.ClosureTableTreeNodeInfo;
 import com.roughandcheap.tinyclosuretabledao.jpatree.JpaTreeException;
+import com.roughandcheap.tinyclosuretabledao.jpatree.NestedTreeNode;
+import com.roughandcheap.tinyclosuretabledao.jpatree.NodeNameTrigramIndex;
+import com.roughandcheap.tinyclosuretabledao.jpatree.NodeSummary;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -29,6 +51,8 @@ public class ClosureTableTreeDaoTest {
     DbSession dbSession;
     @PersistenceContext
     EntityManager entityManager;
+    @Autowired
+    PlatformTransactionManager transactionManager;
 
     @BeforeAll
     public void setup() {
@@ -140,6 +164,27 @@ public class ClosureTableTreeDaoTest {
         assertTrue(path instanceof PersonTreePath);
     }
 
+    @Test
+    public void testAddChildren() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt n1 = dao.find(9L);
+        List<PersonCtt> children = List.of(new PersonCtt("Child 1"), new PersonCtt("Child 2"), new PersonCtt("Child 3"));
+        dao.addChildren(n1, children, 5);
+        List<PersonCtt> result = dao.getChildren(dao.find(9L));
+        assertEquals(3, result.size());
+        assertEquals("Child 1", result.get(0).getNodeName());
+        assertEquals(7, dao.findTreePath(result.get(2), result.get(2)).getOrderIndex());
+        assertEquals(4, dao.getLevel(result.get(1)));
+        assertThrows(JpaTreeException.class, () -> dao.addChildren(dao.find(10L), List.of(dao.find(3L)), 0));
+
+        // 同じインスタンスを複数回指定した場合は、何も登録しない
+        PersonCtt twice = new PersonCtt("Twice");
+        assertThrows(JpaTreeException.class, () -> dao.addChildren(dao.find(10L), List.of(twice, new PersonCtt("Once"), twice), 0));
+        assertFalse(entityManager.contains(twice));
+        assertEquals(0, dao.getChildrenCount(dao.find(10L)));
+    }
+
     @Test
     public void testGetChildrenCount() {
 
@@ -211,6 +256,86 @@ public class ClosureTableTreeDaoTest {
         assertTrue(dao.getTreePaths(n3).isEmpty());
     }
 
+    @Test
+    public void testGetTreeWithDepth() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt n1 = dao.find(2L);
+        PersonCtt n2 = dao.find(17L);
+        assertEquals(5, dao.getTree(n1, 1, 2).size());
+        assertEquals(4, dao.getTree(n1, 3, 3).size());
+        assertEquals(3, dao.getPath(n2, 2).size());
+        assertEquals(5L, dao.getPath(n2, 2).get(0).getId());
+        assertThrows(IllegalArgumentException.class, () -> dao.getTree(n1, 2, 1));
+    }
+
+    @Test
+    public void testGetClosureTableTreeNodeInfoPage() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        List<ClosureTableTreeNodeInfo> all = dao.getClosureTableTreeNodeInfo(2);
+        assertEquals(24, all.size());
+
+        // 深さ 2 から 3 のノードは 2, 3, 4, 5, 8, 9, 10, 11
+        List<ClosureTableTreeNodeInfo> page1 = dao.getClosureTableTreeNodeInfoPage(2, 3, null, 5);
+        List<ClosureTableTreeNodeInfo> page2 = dao.getClosureTableTreeNodeInfoPage(2, 3, page1.get(4).getDescendant().getId(), 5);
+        assertEquals(List.of(2L, 3L, 4L, 5L, 8L), page1.stream().map(i -> i.getDescendant().getId()).toList());
+        assertEquals(List.of(9L, 10L, 11L), page2.stream().map(i -> i.getDescendant().getId()).toList());
+        assertEquals(3, page2.get(2).getDepth());
+        assertEquals(all.stream().filter(i -> i.getDescendant().getId().equals(11L)).findFirst().get().getTreePaths(),
+                page2.get(2).getTreePaths());
+        assertEquals(page2.stream().map(i -> i.getDescendant().getId()).toList(),
+                dao.getClosureTableTreeNodeInfoPage(2, 3, 5, 5).stream().map(i -> i.getDescendant().getId()).toList());
+        assertTrue(dao.getClosureTableTreeNodeInfoPage(2, 3, 11L, 5).isEmpty());
+
+        // ID の桁数が異なっても、treePaths の順はツリーの順
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L, 17L, 18L, 7L, 24L, 25L, 8L, 9L, 10L, 11L, 12L, 15L, 16L, 13L, 19L, 20L, 14L, 21L, 22L, 23L),
+                all.stream().map(i -> i.getDescendant().getId()).toList());
+    }
+
+    @Test
+    public void testGetClosureTableTreeNodeInfoOfNodes() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        List<ClosureTableTreeNodeInfo> infos = dao.getClosureTableTreeNodeInfo(List.of(dao.find(5L), dao.find(13L)));
+        assertEquals(10, infos.size());
+        assertEquals(5L, infos.get(0).getDescendant().getId());
+        assertEquals(1, infos.get(0).getDepth());
+        assertEquals(3, infos.stream().filter(i -> i.getDescendant().getId().equals(17L)).findFirst().get().getDepth());
+        assertEquals(2, infos.stream().filter(i -> i.getDescendant().getId().equals(19L)).findFirst().get().getDepth());
+
+        List<ClosureTableTreeNodeInfo> nested = dao.getClosureTableTreeNodeInfo(List.of(dao.find(2L), dao.find(5L)));
+        assertEquals(8, nested.size());
+        assertEquals(2, nested.stream().filter(i -> i.getDescendant().getId().equals(6L)).findFirst().get().getDepth());
+    }
+
+    @Test
+    public void testStreamTree() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        dao.setStreamClearInterval(2);
+        try (Stream<PersonCtt> stream = dao.streamTree(dao.find(5L))) {
+            assertEquals(7, stream.count());
+        }
+        try (Stream<PersonTreePath> stream = dao.streamTreePaths(dao.find(5L))) {
+            assertEquals(7, stream.filter(p -> p.getAncestor().getId().equals(5L)).count());
+        }
+        try (Stream<PersonTreePath> stream = dao.streamAllTreePaths()) {
+            assertEquals(dao.findAllTreePath().size(), stream.count());
+        }
+
+        // ストリームの前に行った変更は切り離されずに保存される
+        PersonCtt pending = dao.find(6L);
+        pending.setNodeName("pending");
+        try (Stream<PersonCtt> stream = dao.streamTree(dao.find(2L))) {
+            assertEquals(10, stream.count());
+        }
+        assertTrue(entityManager.contains(pending));
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("pending", dao.find(6L).getNodeName());
+    }
+
     @Test
     public void testGetDescendantPaths() {
 
@@ -278,6 +403,36 @@ public class ClosureTableTreeDaoTest {
         dao.printPaths(dao.getDescendantPaths(n1), "path");
     }
 
+    @Test
+    public void testMoveToSubtree() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt n1 = dao.find(5L);
+        PersonCtt n2 = dao.find(9L);
+
+        dao.moveTo(n1, n2, 3);
+        assertEquals(9L, dao.getParent(dao.find(5L)).getId());
+        assertEquals(6, dao.getLevel(dao.find(17L)));
+        assertEquals(7, dao.getTree(dao.find(5L)).size());
+        assertEquals(3, dao.findTreePath(dao.find(5L), dao.find(5L)).getOrderIndex());
+        assertThrows(JpaTreeException.class, () -> dao.moveTo(dao.find(8L), dao.find(6L)));
+    }
+
+    @Test
+    public void testMoveToSubtreeAfterReorder() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        // 23 を 22 の後ろに並べ替え（23 の自己参照パスと親からのパスのみ更新される）
+        dao.procParent(23L, 21L, 5);
+        dao.moveTo(dao.find(11L), dao.find(2L), 0);
+
+        List<Long> ids = dao.getTree(dao.find(2L)).stream().map(PersonCtt::getId).toList();
+        assertTrue(ids.indexOf(22L) < ids.indexOf(23L));
+        assertEquals(5, dao.findTreePath(dao.find(2L), dao.find(23L)).getOrderIndex());
+        assertEquals(5, dao.findTreePath(dao.find(1L), dao.find(23L)).getOrderIndex());
+        assertEquals(List.of(22L, 23L), dao.getChildren(dao.find(21L)).stream().map(PersonCtt::getId).toList());
+    }
+
     @Test
     public void testDeletePath() {
 
@@ -293,6 +448,517 @@ public class ClosureTableTreeDaoTest {
         });
     }
 
+    @Test
+    public void testDeleteSubtree() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt n1 = dao.find(11L);
+        PersonCtt n2 = dao.find(13L);
+        dao.deleteSubtree(n2, false);
+        assertFalse(dao.isPathExists(dao.find(19L)));
+        assertNotNull(dao.find(19L));
+        assertEquals(8, dao.getTree(dao.find(11L)).size());
+
+        PersonCtt other = dao.find(2L);
+        dao.deleteSubtree(n1, true);
+        assertNull(dao.find(12L));
+        assertNull(dao.find(23L));
+        assertEquals(3, dao.getTree(dao.find(8L)).size());
+
+        // 削除したノードのみ切り離され、その他のノードの変更は保存される
+        assertFalse(entityManager.contains(n1));
+        assertTrue(entityManager.contains(other));
+        other.setNodeName("削除後に変更");
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("削除後に変更", dao.find(2L).getNodeName());
+    }
+
+    @Test
+    public void testGetNestedTreeNodeList() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        NestedTreeNode<PersonCtt> nested = dao.getNestedTreeNodeList(dao.find(11L));
+        assertEquals(4, nested.getChildren().size());
+        NestedTreeNode<PersonCtt> storage = nested.getChildren().get(3);
+        assertEquals(21L, storage.getNode().getId());
+        assertEquals(23L, storage.getChildren().get(0).getNode().getId());
+
+        NestedTreeNode<PersonCtt> shallow = dao.getNestedTreeNodeList(dao.find(11L), 1);
+        assertEquals(4, shallow.getChildren().size());
+        assertTrue(shallow.getChildren().get(3).getChildren().isEmpty());
+
+        List<NestedTreeNode<PersonCtt>> forest = dao.getNestedTreeNodeList();
+        assertEquals(1, forest.size());
+        assertEquals(2, forest.get(0).getChildren().size());
+
+        // 1 と、その子孫の 2 が別の IN 句（1000 件ごと）に分かれる場合
+        List<PersonCtt> roots = new ArrayList<>();
+        roots.add(dao.find(1L));
+        for (int i = 0; i < 999; i++) {
+            roots.add(dao.find(9L));
+        }
+        roots.add(dao.find(2L));
+        List<NestedTreeNode<PersonCtt>> chunked = dao.getNestedTreeNodeList(roots, 2);
+        assertEquals(3, chunked.get(1000).getChildren().size());
+        assertEquals(3, chunked.get(0).getChildren().stream()
+                .filter(n -> n.getNode().getId().equals(2L)).findFirst().orElseThrow().getChildren().size());
+        assertEquals(2, chunked.get(1000).getChildren().stream()
+                .filter(n -> n.getNode().getId().equals(5L)).findFirst().orElseThrow().getChildren().size());
+    }
+
+    @Test
+    public void testCopySubtree() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt n1 = dao.find(5L);
+        PersonCtt n2 = dao.find(10L);
+        PersonCtt copy = dao.copySubtree(n1, n2, n -> new PersonCtt(n.getNodeName()));
+
+        assertNotEquals(5L, copy.getId());
+        assertEquals(7, dao.getTree(copy).size());
+        assertEquals(10L, dao.getParent(copy).getId());
+        assertEquals(6, dao.getLevel(dao.getChildren(dao.getChildren(copy).get(0)).get(0)));
+        assertEquals(7, dao.getTree(dao.find(5L)).size());
+        assertThrows(JpaTreeException.class, () -> dao.copySubtree(dao.find(5L), null, n -> n));
+    }
+
+    @Test
+    public void testLoader() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        String csv = "id,parentId,orderIndex,nodeName\n"
+                + "1,,0,Loaded root\n"
+                + "2,1,0,Loaded A\n"
+                + "3,2,0,Loaded A-1\n"
+                + "4,1,1,Loaded B\n";
+        ClosureTableTreeLoader<PersonCtt, PersonTreePath> loader = new ClosureTableTreeLoader<>(dao,
+                record -> new PersonCtt(record.nodeName()));
+        loader.setChunkSize(2);
+        ClosureTableTreeLoader.Checkpoint checkpoint = loader.load(
+                ClosureTableTreeLoader.csvRecords(new BufferedReader(new StringReader(csv))));
+
+        assertEquals(4, checkpoint.records());
+        assertEquals(8, checkpoint.paths());
+        PersonCtt root = dao.findByNodeName("Loaded root").get(0);
+        assertEquals(4, dao.getTree(root).size());
+        assertEquals(3, dao.getLevel(dao.findByNodeName("Loaded A-1").get(0)));
+        assertEquals(2, dao.getChildren(root).size());
+    }
+
+    @Test
+    public void testProjections() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        long[] treeIds = dao.getTreeIds(dao.find(5L));
+        assertEquals(7, treeIds.length);
+        assertEquals(5L, treeIds[0]);
+        assertArrayEquals(new long[] { 1L, 2L, 5L, 6L, 17L }, dao.getPathIds(dao.find(17L)));
+
+        List<NodeSummary> summaries = dao.getChildrenSummaries(dao.find(11L));
+        assertEquals(4, summaries.size());
+        assertEquals(new NodeSummary(21L, "ストレージ", 50), summaries.get(3));
+        assertTrue(dao.getChildrenSummaries(dao.find(25L)).isEmpty());
+    }
+
+    @Test
+    public void testBatchedReads() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        List<PersonCtt> nodes = List.of(dao.find(17L), dao.find(1L), dao.find(22L));
+
+        Map<PersonCtt, List<PersonCtt>> paths = dao.getPaths(nodes);
+        assertEquals(List.of(17L, 1L, 22L), paths.keySet().stream().map(PersonCtt::getId).toList());
+        assertEquals(List.of(1L, 2L, 5L, 6L, 17L), paths.get(nodes.get(0)).stream().map(PersonCtt::getId).toList());
+        assertEquals(1, paths.get(nodes.get(1)).size());
+
+        Map<PersonCtt, PersonCtt> parents = dao.getParents(nodes);
+        assertEquals(6L, parents.get(nodes.get(0)).getId());
+        assertNull(parents.get(nodes.get(1)));
+        assertEquals(21L, parents.get(nodes.get(2)).getId());
+
+        Map<PersonCtt, List<PersonCtt>> children = dao.getChildren(List.of(dao.find(21L), dao.find(1L), dao.find(25L)));
+        assertEquals(List.of(23L, 22L), children.get(dao.find(21L)).stream().map(PersonCtt::getId).toList());
+        assertEquals(2, children.get(dao.find(1L)).size());
+        assertTrue(children.get(dao.find(25L)).isEmpty());
+    }
+
+    @Test
+    public void testSearchInSubtree() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        List<PersonCtt> found = dao.searchInSubtree(dao.find(8L), "メモリ", 10);
+        assertEquals(List.of(13L, 19L, 20L), found.stream().map(PersonCtt::getId).toList());
+        assertTrue(dao.searchInSubtree(dao.find(2L), "メモリ", 10).isEmpty());
+
+        dao.rebuildNameIndex();
+        assertEquals(List.of(13L, 19L), dao.searchInSubtree(dao.find(8L), "メモリ", 2).stream().map(PersonCtt::getId).toList());
+        assertEquals(5, dao.searchInSubtreeEndsWith(dao.find(5L), "レンズ", 10).size());
+        assertEquals(3, dao.searchInSubtreeEndsWith(dao.find(1L), "PC", 10).size());
+
+        PersonCtt ddr3 = dao.addChild(dao.find(13L), new PersonCtt("DDR3メモリ"));
+        assertEquals(4, dao.searchInSubtree(dao.find(8L), "メモリ", 10).size());
+        dao.deletePath(ddr3);
+        dao.removeNode(ddr3, true);
+        assertEquals(2, dao.searchInSubtree(dao.find(1L), "ddr", 10).size());
+    }
+
+    @Test
+    public void testNameIndexAfterCommit() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        NodeNameTrigramIndex index = dao.rebuildNameIndex();
+        int size = index.size();
+
+        Long committedId = null;
+        try {
+            // ロールバックした変更は索引に反映されない
+            PersonCtt rolledBack = dao.addChild(dao.find(13L), new PersonCtt("DDR3メモリ"));
+            assertEquals(size, index.size());
+            assertTrue(dao.searchInSubtree(dao.find(13L), "DDR3", 10).contains(rolledBack));
+            TestTransaction.flagForRollback();
+            TestTransaction.end();
+            assertEquals(size, index.size());
+
+            TestTransaction.start();
+            PersonCtt committed = dao.addChild(dao.find(13L), new PersonCtt("DDR3メモリ"));
+            TestTransaction.flagForCommit();
+            TestTransaction.end();
+            committedId = committed.getId();
+            assertEquals(size + 1, index.size());
+
+            TestTransaction.start();
+            dao.deletePath(dao.find(committedId));
+            dao.removeNode(dao.find(committedId), true);
+            assertEquals(size + 1, index.size());
+            TestTransaction.flagForCommit();
+            TestTransaction.end();
+            assertEquals(size, index.size());
+        } finally {
+            // 途中で失敗した場合も、コミットしたノードを削除する
+            if (TestTransaction.isActive()) {
+                TestTransaction.flagForRollback();
+                TestTransaction.end();
+            }
+            TestTransaction.start();
+            PersonCtt committed = committedId == null ? null : dao.find(committedId);
+            if (committed != null) {
+                if (dao.isPathExists(committed)) {
+                    dao.deletePath(committed);
+                }
+                dao.removeNode(committed, true);
+                TestTransaction.flagForCommit();
+                TestTransaction.end();
+                TestTransaction.start();
+            }
+        }
+    }
+
+    @Test
+    public void testFindByNamePath() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        List<String> memoryPath = List.of("カテゴリ", "PC", "パソコンパーツ", "メモリ");
+        assertEquals(13L, dao.findByNamePath(memoryPath).getId());
+        assertEquals(13L, dao.findByNamePath(memoryPath).getId());
+        assertEquals(5L, dao.findByNamePath(List.of("カテゴリ", "カメラ", "交換レンズ")).getId());
+        assertNull(dao.findByNamePath(List.of("PC", "パソコンパーツ")));
+        assertNull(dao.findByNamePath(List.of("カテゴリ", "カメラ", "メモリ")));
+
+        dao.moveTo(dao.find(13L), dao.find(2L), 0);
+        assertNull(dao.findByNamePath(memoryPath));
+        assertEquals(13L, dao.findByNamePath(List.of("カテゴリ", "カメラ", "メモリ")).getId());
+    }
+
+    @Test
+    public void testGetChildrenWithCounts() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        List<ChildWithCounts<PersonCtt>> children = dao.getChildrenWithCounts(dao.find(2L));
+        assertEquals(3, children.size());
+        ChildWithCounts<PersonCtt> lens = children.stream().filter(c -> c.node().getId() == 5L).findFirst().get();
+        assertEquals(2, lens.childCount());
+        assertEquals(6, lens.descendantCount());
+        assertTrue(lens.hasChildren());
+        assertEquals(2, children.stream().filter(c -> !c.hasChildren()).count());
+        assertTrue(dao.getChildrenWithCounts(dao.find(25L)).isEmpty());
+    }
+
+    @Test
+    public void testGetRevealView() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        NestedTreeNode<PersonCtt> view = dao.getRevealView(dao.find(17L));
+        assertEquals(1L, view.getNode().getId());
+        assertEquals(2, view.getChildren().size());
+        NestedTreeNode<PersonCtt> camera = view.getChildren().stream().filter(n -> n.getNode().getId() == 2L).findFirst().get();
+        assertEquals(3, camera.getChildren().size());
+        NestedTreeNode<PersonCtt> lens = camera.getChildren().stream().filter(n -> n.getNode().getId() == 5L).findFirst().get();
+        assertEquals(2, lens.getChildren().size());
+        NestedTreeNode<PersonCtt> af = lens.getChildren().stream().filter(n -> n.getNode().getId() == 6L).findFirst().get();
+        assertEquals(2, af.getChildren().size());
+        assertTrue(af.getChildren().stream().allMatch(n -> n.getChildren().isEmpty()));
+        NestedTreeNode<PersonCtt> pc = view.getChildren().stream().filter(n -> n.getNode().getId() == 8L).findFirst().get();
+        assertTrue(pc.getChildren().isEmpty());
+
+        assertTrue(dao.getRevealView(dao.find(1L)).getChildren().isEmpty());
+    }
+
+    @Test
+    public void testGetChildrenPage() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt pcparts = dao.find(11L);
+        ChildrenPage<PersonCtt> page = dao.getChildrenPage(pcparts, null, 3);
+        assertEquals(List.of(12L, 13L, 14L), page.nodes().stream().map(PersonCtt::getId).toList());
+        assertTrue(page.hasNext());
+        assertEquals(new ChildCursor(0, 14L), page.next());
+
+        page = dao.getChildrenPage(pcparts, page.next(), 3);
+        assertEquals(List.of(21L), page.nodes().stream().map(PersonCtt::getId).toList());
+        assertFalse(page.hasNext());
+
+        page = dao.getChildrenPage(dao.find(21L), null, 2);
+        assertEquals(List.of(23L, 22L), page.nodes().stream().map(PersonCtt::getId).toList());
+        assertFalse(page.hasNext());
+        assertThrows(IllegalArgumentException.class, () -> dao.getChildrenPage(pcparts, null, 0));
+    }
+
+    @Test
+    public void testCachedClosureTableTreeDao() {
+
+        CachedClosureTableTreeDao<PersonCtt, PersonTreePath> dao = new CachedClosureTableTreeDao<>(PersonCtt.class,
+                PersonTreePath.class, dbSession);
+        assertEquals(25, dao.refreshSnapshot().size());
+        assertEquals(7, dao.getTree(dao.find(5L)).size());
+        assertEquals(List.of(1L, 2L, 5L, 6L, 17L), dao.getPath(dao.find(17L)).stream().map(PersonCtt::getId).toList());
+        assertEquals(List.of(23L, 22L), dao.getChildren(dao.find(21L)).stream().map(PersonCtt::getId).toList());
+        assertTrue(dao.parentContains(dao.find(2L), dao.find(25L)));
+        assertFalse(dao.parentContains(dao.find(8L), dao.find(25L)));
+        assertEquals(4, dao.getLevel(dao.find(6L)));
+        PersonCtt detached = new PersonCtt("path not registered node");
+        entityManager.persist(detached);
+        assertThrows(JpaTreeException.class, () -> dao.getLevel(detached));
+        assertEquals(1, dao.getRootNodes().size());
+        assertTrue(dao.isRoot(dao.find(1L)));
+        assertFalse(dao.hasChild(dao.find(25L)));
+
+        // 更新したトランザクションでは DB から読み込む
+        dao.moveTo(dao.find(21L), dao.find(2L), 0);
+        assertTrue(dao.parentContains(dao.find(2L), dao.find(22L)));
+        assertEquals(13, dao.getTree(dao.find(2L)).size());
+    }
+
+    @Test
+    public void testCachedSnapshotAfterCommit() {
+
+        CachedClosureTableTreeDao<PersonCtt, PersonTreePath> dao = new CachedClosureTableTreeDao<>(PersonCtt.class,
+                PersonTreePath.class, dbSession);
+        dao.setTransactionManager(transactionManager);
+        TreeSnapshot before = dao.refreshSnapshot();
+
+        try {
+            // ロールバックした場合は公開しない
+            dao.moveTo(dao.find(21L), dao.find(2L), 0);
+            assertNull(dao.currentSnapshot());
+            TestTransaction.flagForRollback();
+            TestTransaction.end();
+            assertSame(before, dao.currentSnapshot());
+
+            // コミットした場合は更新を反映したスナップショットを公開する
+            TestTransaction.start();
+            dao.moveTo(dao.find(21L), dao.find(2L), 0);
+            TestTransaction.flagForCommit();
+            TestTransaction.end();
+            TreeSnapshot moved = dao.currentSnapshot();
+            assertNotSame(before, moved);
+            assertArrayEquals(new long[] { 1L, 2L, 21L, 22L }, moved.pathIds(moved.indexOf(22L)));
+            assertEquals(25, moved.size());
+        } finally {
+            // 元に戻す
+            if (TestTransaction.isActive()) {
+                TestTransaction.flagForRollback();
+                TestTransaction.end();
+            }
+            TestTransaction.start();
+            if (!Long.valueOf(11L).equals(dao.getParent(dao.find(21L)).getId())) {
+                dao.moveTo(dao.find(21L), dao.find(11L), 50);
+                TestTransaction.flagForCommit();
+                TestTransaction.end();
+                TestTransaction.start();
+            }
+        }
+        TreeSnapshot restored = dao.currentSnapshot();
+        assertArrayEquals(before.pathIds(before.indexOf(22L)), restored.pathIds(restored.indexOf(22L)));
+        assertArrayEquals(before.childIds(before.indexOf(21L)), restored.childIds(restored.indexOf(21L)));
+        assertArrayEquals(dao.refreshSnapshot().subtreeIds(0), restored.subtreeIds(0));
+    }
+
+    @Test
+    public void testTreeSnapshotWithChanges() {
+
+        // 1 -> {2 -> {4, 5}, 3}, 6
+        TreeSnapshot base = TreeSnapshot.of(new long[] { 1L, 2L, 3L, 4L, 5L, 6L }, new int[] { 0, 0, 1, 0, 1, 1 },
+                new long[] { TreeSnapshot.NO_PARENT, 1L, 1L, 2L, 2L, TreeSnapshot.NO_PARENT });
+
+        // 2 を 3 の下へ移動し、5 を削除して 7 を 6 の下に追加する
+        TreeSnapshot changed = base.withChanges(Set.of(2L, 5L, 7L), new long[] { 7L, 2L }, new int[] { 0, 0 },
+                new long[] { 6L, 3L });
+        TreeSnapshot expected = TreeSnapshot.of(new long[] { 1L, 2L, 3L, 4L, 6L, 7L }, new int[] { 0, 0, 1, 0, 1, 0 },
+                new long[] { TreeSnapshot.NO_PARENT, 3L, 1L, 2L, TreeSnapshot.NO_PARENT, 6L });
+        assertArrayEquals(expected.rootIds(), changed.rootIds());
+        for (long root : expected.rootIds()) {
+            assertArrayEquals(expected.subtreeIds(expected.indexOf(root)), changed.subtreeIds(changed.indexOf(root)));
+        }
+        assertArrayEquals(new long[] { 1L, 3L, 2L, 4L }, changed.pathIds(changed.indexOf(4L)));
+        assertEquals(TreeSnapshot.NONE, changed.indexOf(5L));
+        // 変更前のスナップショットは変わらない
+        assertArrayEquals(new long[] { 4L, 5L }, base.childIds(base.indexOf(2L)));
+    }
+
+    @Test
+    public void testClosureMemo() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt n1 = dao.find(25L);
+        assertEquals(5, dao.getLevel(n1));
+        assertEquals(7L, dao.getParent(n1).getId());
+        PersonCtt child = dao.addChild(n1, new PersonCtt("memo child"));
+        assertEquals(6, getDao().getLevel(child));
+        assertTrue(dao.parentContains(dao.find(2L), child));
+
+        dao.moveTo(dao.find(5L), dao.find(8L), 0);
+        assertTrue(dao.parentContains(dao.find(8L), child));
+        assertFalse(dao.parentContains(dao.find(2L), child));
+        assertEquals(6, dao.getLevel(child));
+
+        dao.deletePath(dao.find(child.getId()));
+        assertFalse(dao.isPathExists(child));
+        assertThrows(JpaTreeException.class, () -> dao.getParent(child));
+    }
+
+    @Test
+    public void testClosureMemoQueriesOncePerNode() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean enabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        try {
+            PersonCtt n1 = dao.find(25L);
+            PersonCtt n2 = dao.find(2L);
+            statistics.clear();
+            assertFalse(dao.isRoot(n1));
+            assertTrue(dao.isPathExists(n1));
+            assertEquals(5, dao.getLevel(n1));
+            assertEquals(5, dao.countPaths(n1));
+            assertTrue(dao.parentContains(n2, n1));
+            assertEquals(7L, dao.getParent(n1).getId());
+            assertEquals(1, statistics.getQueryExecutionCount());
+        } finally {
+            statistics.setStatisticsEnabled(enabled);
+        }
+    }
+
+    @Test
+    public void testClosureMemoRequiresNew() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt child = dao.addChild(dao.find(25L), new PersonCtt("memo child"));
+        assertTrue(dao.isPathExists(child));
+
+        // 内側のトランザクションは外側のコミット前のメモを参照しない
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        assertEquals(Boolean.FALSE, requiresNew.execute(status -> dao.isPathExists(child)));
+        assertTrue(dao.isPathExists(child));
+    }
+
+    @Test
+    public void testBreadcrumbCache() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        BreadcrumbCache cache = new BreadcrumbCache(3);
+        dao.setBreadcrumbCache(cache);
+
+        assertEquals(List.of(1L, 2L, 5L, 6L, 17L), dao.getPath(dao.find(17L)).stream().map(PersonCtt::getId).toList());
+        assertEquals(List.of(1L, 2L, 5L, 6L, 17L), dao.getPath(dao.find(17L)).stream().map(PersonCtt::getId).toList());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        dao.getPath(dao.find(25L));
+        dao.getPath(dao.find(22L));
+        dao.getPath(dao.find(15L));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // 移動したツリーに属するノードのみ破棄される
+        dao.moveTo(dao.find(7L), dao.find(8L), 0);
+        assertEquals(2, cache.size());
+        assertEquals(List.of(1L, 8L, 7L, 25L), dao.getPath(dao.find(25L)).stream().map(PersonCtt::getId).toList());
+        assertEquals(List.of(1L, 8L, 11L, 21L, 22L), dao.getPath(dao.find(22L)).stream().map(PersonCtt::getId).toList());
+        // ツリーを更新したトランザクションではコミット前のパスを登録しない
+        assertEquals(2, cache.size());
+
+        dao.deletePath(dao.find(22L));
+        assertTrue(dao.getPath(dao.find(22L)).isEmpty());
+    }
+
+    @Test
+    public void testBreadcrumbCacheEpoch() {
+
+        BreadcrumbCache cache = new BreadcrumbCache(10);
+        long epoch = cache.getEpoch();
+        cache.invalidateSubtree(99L);
+        assertFalse(cache.put(17L, List.of(1L, 2L, 5L, 6L, 17L), epoch));
+        assertEquals(0, cache.size());
+        assertTrue(cache.put(17L, List.of(1L, 2L, 5L, 6L, 17L), cache.getEpoch()));
+        assertEquals(1, cache.size());
+
+        // 祖先 ID の逆引きで、破棄したノードを祖先に含むエントリのみを破棄する
+        assertTrue(cache.put(24L, List.of(1L, 2L, 5L, 7L, 24L), cache.getEpoch()));
+        assertTrue(cache.put(22L, List.of(1L, 8L, 11L, 21L, 22L), cache.getEpoch()));
+        assertTrue(cache.put(22L, List.of(1L, 2L, 6L, 21L, 22L), cache.getEpoch()));
+        cache.invalidateSubtree(6L);
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(24L));
+        cache.invalidateSubtree(11L);
+        assertEquals(1, cache.size());
+        cache.invalidateSubtree(2L);
+        assertEquals(0, cache.size());
+        assertTrue(cache.put(17L, List.of(1L, 2L, 5L, 6L, 17L), cache.getEpoch()));
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        BreadcrumbCache daoCache = new BreadcrumbCache(10);
+        dao.setBreadcrumbCache(daoCache);
+        dao.getPath(dao.find(17L));
+        assertEquals(1, daoCache.size());
+        // トランザクションの参照開始後に他のトランザクションで破棄された場合は登録しない
+        daoCache.invalidateSubtree(99L);
+        assertEquals(List.of(1L, 2L, 5L, 7L, 24L), dao.getPath(dao.find(24L)).stream().map(PersonCtt::getId).toList());
+        assertEquals(1, daoCache.size());
+    }
+
+    @Test
+    public void testMoveToKeepsManagedEntities() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        PersonCtt other = dao.find(9L);
+        PersonCtt moved = dao.find(21L);
+        dao.moveTo(moved, dao.find(2L), 0);
+
+        // 移動の前に読み込んだノードは管理下に残り、移動後の変更も保存される
+        assertTrue(entityManager.contains(other));
+        assertTrue(entityManager.contains(moved));
+        other.setNodeName("移動後に変更");
+        moved.setNodeName("移動したノードを変更");
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("移動後に変更", dao.find(9L).getNodeName());
+        assertEquals("移動したノードを変更", dao.find(21L).getNodeName());
+        assertEquals(2L, dao.getParent(dao.find(21L)).getId());
+    }
+
     @Test
     public void testFindTreePath() {
         
@@ -69,6 +69,18 @@ public class MenuItemDaoTest {
         dao.printNodeInfo(dao.getClosureTableTreeNodeInfo());
     }
 
+    @Test
+    public void testDeleteSubtree() {
+
+        LinkableClosureTableTreeDao<MenuItemNode, MenuItemPath> dao = getDao();
+        MenuItemNode n1 = dao.find(11L);
+        MenuItemNode n2 = dao.find(2L);
+        assertThrows(LinkableJpaTreeException.class, () -> dao.deleteSubtree(n1, true));
+        dao.deleteSubtree(n2, true);
+        assertNull(dao.find(26L));
+        assertNull(dao.find(5L));
+    }
+
     public void testAddLinkTo() {
         //
     }
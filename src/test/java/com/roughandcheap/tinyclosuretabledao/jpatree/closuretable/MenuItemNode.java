@@ -1,14 +1,18 @@
 package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Parameter;
 
 import com.roughandcheap.tinyclosuretabledao.jpatree.LinkableTreeNode;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import lombok.EqualsAndHashCode;
@@ -20,7 +24,10 @@ import lombok.ToString;
 @Getter
 @ToString(callSuper = true)
 @EqualsAndHashCode(callSuper = false, onlyExplicitlyIncluded = true)
-@Table(uniqueConstraints = @UniqueConstraint(name = "ux_menu_item_node_slug", columnNames = {"slug"}))
+@Table(uniqueConstraints = @UniqueConstraint(name = "ux_menu_item_node_slug", columnNames = {"slug"}),
+        indexes = @Index(name = "ix_menu_item_node_node_name", columnList = "node_name"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class MenuItemNode extends AbstractLinkableClosureTableTreeNode<MenuItemNode> {
 
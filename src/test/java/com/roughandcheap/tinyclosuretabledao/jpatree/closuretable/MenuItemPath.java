@@ -1,10 +1,16 @@
 package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -19,6 +25,11 @@ import lombok.ToString;
 @ToString(callSuper = true)
 @EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = true)
 @IdClass(MenuItemPathId.class)
+@Table(indexes = {
+        @Index(name = "ix_menu_item_path_descendant_depth", columnList = "descendant, depth"),
+        @Index(name = "ix_menu_item_path_children", columnList = "ancestor, depth, orderIndex, descendant") })
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class MenuItemPath extends AbstractTreePath<MenuItemNode> {
     
@@ -0,0 +1,172 @@
+package com.roughandcheap.tinyclosuretabledao.jpatree.closuretable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.roughandcheap.tinyclosuretabledao.commons.DbSession;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * 二次キャッシュとクエリキャッシュを有効にした {@link ClosureTableTreeDao} のテスト
+ * <p>
+ * 他のテストとはデータベースを分け、コミットした結果のキャッシュを確認します。
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:mysql://localhost:3306/demotree_cache?createDatabaseIfNotExist=true&useCursorFetch=true",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=true",
+        "spring.jpa.properties.hibernate.cache.region.factory_class=jcache",
+        "spring.jpa.properties.hibernate.javax.cache.provider=org.ehcache.jsr107.EhcacheCachingProvider",
+        "spring.jpa.properties.hibernate.javax.cache.missing_cache_strategy=create",
+        "spring.jpa.properties.hibernate.generate_statistics=true" })
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class SecondLevelCacheTest {
+
+    @Autowired
+    DbSession dbSession;
+    @PersistenceContext
+    EntityManager entityManager;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private Long rootId;
+    private Long cameraId;
+    private Long pcId;
+    private Long dslrId;
+    private Long lensId;
+
+    @BeforeAll
+    public void setup() {
+        inTransaction(() -> {
+            createInitialData();
+            return null;
+        });
+    }
+
+    @BeforeEach
+    public void clearCaches() {
+        sessionFactory().getCache().evictAllRegions();
+        statistics().clear();
+    }
+
+    @Test
+    public void testQueryCacheHitAndMiss() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        assertEquals(PersonTreePath.class.getName() + ".tree", dao.getQueryCacheRegion());
+
+        assertEquals(List.of(dslrId, lensId), inTransaction(() -> childIds(dao, cameraId)));
+        CacheRegionStatistics queryRegion = dao.getCacheRegionStatistics().get(dao.getQueryCacheRegion());
+        assertNotNull(queryRegion);
+        assertEquals(0, queryRegion.getHitCount());
+        assertEquals(1, queryRegion.getMissCount());
+        assertEquals(1, queryRegion.getPutCount());
+
+        // 別のトランザクションではクエリキャッシュとエンティティのキャッシュから返す
+        assertEquals(List.of(dslrId, lensId), inTransaction(() -> childIds(dao, cameraId)));
+        assertEquals(1, queryRegion.getHitCount());
+        assertEquals(1, queryRegion.getMissCount());
+        assertTrue(statistics().getDomainDataRegionStatistics(PersonCtt.class.getName()).getHitCount() > 0);
+
+        assertEquals(List.of(rootId, cameraId, lensId), inTransaction(() -> ids(dao.getPath(dao.find(lensId)))));
+        assertEquals(List.of(rootId, cameraId, lensId), inTransaction(() -> ids(dao.getPath(dao.find(lensId)))));
+        assertEquals(2, queryRegion.getHitCount());
+        assertEquals(2, queryRegion.getMissCount());
+    }
+
+    @Test
+    public void testQueryCacheInvalidatedByMoveTo() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+        assertEquals(List.of(dslrId, lensId), inTransaction(() -> childIds(dao, cameraId)));
+        assertEquals(List.of(), inTransaction(() -> childIds(dao, pcId)));
+        CacheRegionStatistics queryRegion = dao.getCacheRegionStatistics().get(dao.getQueryCacheRegion());
+        assertEquals(2, queryRegion.getPutCount());
+
+        try {
+            // 同じトランザクション内では、更新後にキャッシュされた結果を返さない
+            List<Long> moved = inTransaction(() -> {
+                dao.moveTo(dao.find(lensId), dao.find(pcId));
+                return childIds(dao, cameraId);
+            });
+            assertEquals(List.of(dslrId), moved);
+            assertEquals(0, queryRegion.getHitCount());
+
+            // コミット後の参照では、更新前のクエリの結果を返さない
+            long misses = queryRegion.getMissCount();
+            assertEquals(List.of(dslrId), inTransaction(() -> childIds(dao, cameraId)));
+            assertEquals(List.of(lensId), inTransaction(() -> childIds(dao, pcId)));
+            assertEquals(0, queryRegion.getHitCount());
+            assertEquals(misses + 2, queryRegion.getMissCount());
+            assertEquals(List.of(rootId, pcId, lensId), inTransaction(() -> ids(dao.getPath(dao.find(lensId)))));
+
+            // 更新後に登録された結果は再び使用される
+            assertEquals(List.of(dslrId), inTransaction(() -> childIds(dao, cameraId)));
+            assertEquals(1, queryRegion.getHitCount());
+        } finally {
+            inTransaction(() -> {
+                dao.moveTo(dao.find(lensId), dao.find(cameraId), 1);
+                return null;
+            });
+        }
+    }
+
+    private List<Long> childIds(ClosureTableTreeDao<PersonCtt, PersonTreePath> dao, Long parentId) {
+        return ids(dao.getChildren(dao.find(parentId)));
+    }
+
+    private static List<Long> ids(List<PersonCtt> nodes) {
+        return nodes.stream().map(PersonCtt::getId).toList();
+    }
+
+    private <T> T inTransaction(Supplier<T> action) {
+        return new TransactionTemplate(transactionManager).execute(status -> action.get());
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactory.class);
+    }
+
+    private Statistics statistics() {
+        return sessionFactory().getStatistics();
+    }
+
+    private void createInitialData() {
+
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = getDao();
+
+        PersonCtt root = dao.createRoot(new PersonCtt("カテゴリ"));
+        PersonCtt camera = dao.addChild(root, new PersonCtt("カメラ"), 0);
+        PersonCtt pc = dao.addChild(root, new PersonCtt("PC"), 1);
+        PersonCtt dslr = dao.addChild(camera, new PersonCtt("デジタル一眼レフ"), 0);
+        PersonCtt lens = dao.addChild(camera, new PersonCtt("交換レンズ"), 1);
+
+        rootId = root.getId();
+        cameraId = camera.getId();
+        pcId = pc.getId();
+        dslrId = dslr.getId();
+        lensId = lens.getId();
+    }
+
+    private ClosureTableTreeDao<PersonCtt, PersonTreePath> getDao() {
+        ClosureTableTreeDao<PersonCtt, PersonTreePath> dao = new ClosureTableTreeDao<>(PersonCtt.class, PersonTreePath.class, dbSession);
+        dao.setSecondLevelCacheEnabled(true);
+        return dao;
+    }
+}